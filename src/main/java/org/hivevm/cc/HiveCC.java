@@ -21,6 +21,9 @@ public interface HiveCC {
   String JJTREE_NODE_CLASS          = "NODE_CLASS";
   String JJTREE_NODE_DEFAULT_VOID   = "NODE_DEFAULT_VOID";
   String JJTREE_NODE_SCOPE_HOOK     = "NODE_SCOPE_HOOK";
+  String JJTREE_NODE_ARENA          = "NODE_ARENA";
+  String JJTREE_NODE_USES_PARSER    = "NODE_USES_PARSER";
+  String JJTREE_NODE_CONTEXT        = "NODE_CONTEXT";
 
   String JJTREE_OUTPUT_FILE         = "OUTPUT_FILE";
   String JJTREE_TRACK_TOKENS        = "TRACK_TOKENS";
@@ -34,6 +37,7 @@ public interface HiveCC {
 
 
   String JJPARSER_NO_DFA                  = "NO_DFA";
+  String JJPARSER_DFA_TABLES              = "DFA_TABLES";
   String JJPARSER_LOOKAHEAD               = "LOOKAHEAD";
   String JJPARSER_IGNORE_CASE             = "IGNORE_CASE";
   String JJPARSER_ERROR_REPORTING         = "ERROR_REPORTING";
@@ -48,7 +52,13 @@ public interface HiveCC {
   String JJPARSER_OUTPUT_DIRECTORY        = "OUTPUT_DIRECTORY";
   String JJPARSER_CODEGENERATOR           = "CODE_GENERATOR";
   String JJPARSER_KEEP_LINE_COLUMN        = "KEEP_LINE_COLUMN";
+  String JJPARSER_LAZY_TOKEN_IMAGE        = "LAZY_TOKEN_IMAGE";
+  String JJPARSER_LINE_COLUMN_INDEX       = "LINE_COLUMN_INDEX";
   String JJPARSER_DEPTH_LIMIT             = "DEPTH_LIMIT";
+  String JJPARSER_TOKEN_POOL              = "TOKEN_POOL";
+  String JJPARSER_LOOKAHEAD_MEMO          = "LOOKAHEAD_MEMO";
+  String JJPARSER_LOOKAHEAD_TABLES        = "LOOKAHEAD_TABLES";
+  String JJPARSER_STREAMING               = "STREAMING";
 
   String JJPARSER_BASE_LEXER              = "BASE_LEXER";
   String JJPARSER_BASE_PARSER             = "BASE_PARSER";
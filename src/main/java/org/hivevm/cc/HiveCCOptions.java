@@ -35,6 +35,7 @@ public class HiveCCOptions implements Options {
     temp.add(new OptionInfo(HiveCC.JJPARSER_CHOICE_AMBIGUITY_CHECK, Integer.valueOf(2)));
     temp.add(new OptionInfo(HiveCC.JJPARSER_OTHER_AMBIGUITY_CHECK, Integer.valueOf(1)));
     temp.add(new OptionInfo(HiveCC.JJPARSER_NO_DFA, Boolean.FALSE));
+    temp.add(new OptionInfo(HiveCC.JJPARSER_DFA_TABLES, Boolean.FALSE));
     temp.add(new OptionInfo(HiveCC.JJPARSER_DEBUG_PARSER, Boolean.FALSE));
 
     temp.add(new OptionInfo(HiveCC.JJPARSER_DEBUG_LOOKAHEAD, Boolean.FALSE));
@@ -47,10 +48,16 @@ public class HiveCCOptions implements Options {
     temp.add(new OptionInfo(HiveCC.JJPARSER_FORCE_LA_CHECK, Boolean.FALSE));
     temp.add(new OptionInfo(HiveCC.JJPARSER_CACHE_TOKENS, Boolean.FALSE));
     temp.add(new OptionInfo(HiveCC.JJPARSER_KEEP_LINE_COLUMN, Boolean.TRUE));
+    temp.add(new OptionInfo(HiveCC.JJPARSER_LAZY_TOKEN_IMAGE, Boolean.FALSE));
+    temp.add(new OptionInfo(HiveCC.JJPARSER_LINE_COLUMN_INDEX, Boolean.FALSE));
 
     temp.add(new OptionInfo(HiveCC.JJPARSER_OUTPUT_DIRECTORY, "."));
     temp.add(new OptionInfo(HiveCC.JJPARSER_CODEGENERATOR, HiveCCOptions.OUTPUT_LANGUAGE__JAVA));
     temp.add(new OptionInfo(HiveCC.JJPARSER_DEPTH_LIMIT, Integer.valueOf(0)));
+    temp.add(new OptionInfo(HiveCC.JJPARSER_TOKEN_POOL, Integer.valueOf(0)));
+    temp.add(new OptionInfo(HiveCC.JJPARSER_LOOKAHEAD_MEMO, Integer.valueOf(0)));
+    temp.add(new OptionInfo(HiveCC.JJPARSER_LOOKAHEAD_TABLES, Boolean.FALSE));
+    temp.add(new OptionInfo(HiveCC.JJPARSER_STREAMING, Boolean.FALSE));
 
     temp.add(new OptionInfo(HiveCC.JJPARSER_BASE_PARSER, ""));
     temp.add(new OptionInfo(HiveCC.JJPARSER_BASE_LEXER, ""));
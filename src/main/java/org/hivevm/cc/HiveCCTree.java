@@ -23,6 +23,7 @@ import org.hivevm.cc.generator.TreeOptions;
 import org.hivevm.cc.jjtree.ASTGrammar;
 import org.hivevm.cc.jjtree.ASTWriter;
 import org.hivevm.cc.jjtree.JJTreeParserDefault;
+import org.hivevm.cc.jjtree.ParseException;
 import org.hivevm.cc.parser.JavaCCErrors;
 
 public class HiveCCTree {
@@ -123,7 +124,6 @@ public class HiveCCTree {
       }
       options.setCmdLineOption(args[arg]);
     }
-    options.validate();
 
     HiveCCTools.createOutputDir(options.getOutputDirectory());
     File jjFile = HiveCCTree.createTreeFile(filename, options);
@@ -139,6 +139,12 @@ public class HiveCCTree {
       JJTreeParserDefault parser = new JJTreeParserDefault(reader, options);
       ASTGrammar root = parser.parse();
 
+      // The options of the grammar are set by the parser
+      options.validate();
+      if (JavaCCErrors.hasError()) {
+        throw new ParseException("Detected " + JavaCCErrors.get_error_count() + " errors in the options.");
+      }
+
       if (Boolean.getBoolean("jjtree-dump")) {
         root.dump(" ");
       }
@@ -20,6 +20,11 @@ public interface ParserRequest {
 
   boolean isGenerated();
 
+  /**
+   * Returns true if an action of the parser walks the token chain.
+   */
+  boolean isTokenChainWalked();
+
   boolean ignoreCase();
 
   int getStateCount();
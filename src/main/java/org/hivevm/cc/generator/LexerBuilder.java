@@ -5,9 +5,13 @@ package org.hivevm.cc.generator;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Locale;
 import java.util.Vector;
 
@@ -57,11 +61,15 @@ public class LexerBuilder {
         for (int i = 0; i < stateData.getAllStateCount(); i++) {
           GetNonAsciiMoves(data, stateData.getAllState(i));
         }
+        stateData.asciiOnly = IsAsciiOnly(stateData);
       }
 
       GetDfaCode(stateData);
       if (stateData.hasNFA) {
         GetMoveNfa(stateData);
+        if (data.options().getDfaTables() && (stateData.generatedStates() > 0)) {
+          GetDfaTables(stateData);
+        }
       }
     }
     return data;
@@ -710,6 +718,15 @@ public class LexerBuilder {
     return ret;
   }
 
+  private static boolean IsAsciiOnly(NfaStateData data) {
+    for (NfaState state : data.getAllStates()) {
+      if ((state.lexState == data.getStateIndex()) && (state.nonAsciiMethod != -1)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private final void UpdateDuplicateNonAsciiMoves(LexerData data, NfaState state) {
     for (int i = 0; i < data.nonAsciiTableForMethod.size(); i++) {
       NfaState tmp = data.nonAsciiTableForMethod.get(i);
@@ -1399,6 +1416,270 @@ public class LexerBuilder {
     GetCharAndRangeMoves(data);
   }
 
+  private static final int MAX_DFA_STATES = 16384;
+  private static final int MAX_DFA_SIZE   = 1 << 22;
+
+  /**
+   * Converts the NFA of a lexical state into a minimal DFA. The characters are partitioned into
+   * equivalence classes, so that the transitions fit into a single table indexed by state and
+   * class. States without any NFA state left are numbered first, so the lexer can stop on a
+   * simple bound check.
+   */
+  private final void GetDfaTables(NfaStateData data) {
+    int nfaStates = data.generatedStates();
+    int names = Math.max(nfaStates, data.dummyStateIndex + 1);
+
+    BitSet[] expand = new BitSet[names];
+    for (int i = 0; i < nfaStates; i++) {
+      expand[i] = new BitSet(nfaStates);
+      expand[i].set(i);
+    }
+    for (String key : data.compositeStateTable.keySet()) {
+      BitSet set = new BitSet(nfaStates);
+      for (int name : data.compositeStateTable.get(key)) {
+        if (name != -1) {
+          set.set(name);
+        }
+      }
+      expand[StateNameForComposite(data, key)] = set;
+    }
+
+    int[] kinds = new int[nfaStates];
+    BitSet[] next = new BitSet[nfaStates];
+    for (int i = 0; i < nfaStates; i++) {
+      NfaState state = data.getIndexedState(i);
+      kinds[i] = state.kindToPrint;
+      next[i] = new BitSet(nfaStates);
+      if ((state.next != null) && (state.next.usefulEpsilonMoves > 0)) {
+        for (int name : data.getNextStates(state.next.epsilonMovesString)) {
+          next[i].set(name);
+        }
+      }
+    }
+
+    // Equivalence classes: characters that move exactly the same set of NFA states
+    BitSet bounds = new BitSet(0x10001);
+    bounds.set(0, 129);
+    bounds.set(0x10000);
+    for (int i = 0; i < nfaStates; i++) {
+      NfaState state = data.getIndexedState(i);
+      if (state.charMoves != null) {
+        for (int j = 0; (j < state.charMoves.length) && (state.charMoves[j] != 0); j++) {
+          bounds.set(state.charMoves[j]);
+          bounds.set(state.charMoves[j] + 1);
+        }
+      }
+      if (state.rangeMoves != null) {
+        for (int j = 0; (j < state.rangeMoves.length) && (state.rangeMoves[j] != 0); j += 2) {
+          bounds.set(state.rangeMoves[j]);
+          bounds.set(state.rangeMoves[j + 1] + 1);
+        }
+      }
+    }
+
+    int[] classOf = new int[0x10000];
+    List<BitSet> movers = new ArrayList<>();
+    Map<BitSet, Integer> classes = new HashMap<>();
+    for (int c = 0; c < 0x10000;) {
+      int end = bounds.nextSetBit(c + 1);
+      BitSet moving = new BitSet(nfaStates);
+      for (int i = 0; i < nfaStates; i++) {
+        if (LexerBuilder.CanMove(data.getIndexedState(i), (char) c)) {
+          moving.set(i);
+        }
+      }
+
+      Integer cls = classes.get(moving);
+      if (cls == null) {
+        classes.put(moving, cls = Integer.valueOf(movers.size()));
+        movers.add(moving);
+      }
+      Arrays.fill(classOf, c, end, cls.intValue());
+      c = end;
+    }
+    int classCount = movers.size();
+
+    // Subset construction, a DFA state is the set of NFA states together with the matched kind
+    List<BitSet> sets = new ArrayList<>();
+    List<Integer> setKinds = new ArrayList<>();
+    Map<String, Integer> dfaStates = new HashMap<>();
+    int[] trans = new int[1024];
+
+    LexerBuilder.AddDfaState(new BitSet(), Integer.MAX_VALUE, sets, setKinds, dfaStates);
+    int[] start = new int[names];
+    for (int i = 0; i < names; i++) {
+      start[i] = (expand[i] == null) ? 0
+          : LexerBuilder.AddDfaState(expand[i], Integer.MAX_VALUE, sets, setKinds, dfaStates);
+    }
+
+    for (int s = 0; s < sets.size(); s++) {
+      if (sets.size() > LexerBuilder.MAX_DFA_STATES) {
+        JavaCCErrors.warning("Lexical state " + data.global.getStateName(data.getStateIndex())
+            + " needs too many DFA states, falling back to the NFA.");
+        return;
+      }
+
+      if (trans.length < ((s + 1) * classCount)) {
+        trans = Arrays.copyOf(trans, Math.max(trans.length * 2, (s + 1) * classCount));
+      }
+
+      BitSet set = sets.get(s);
+      for (int c = 0; c < classCount; c++) {
+        int kind = Integer.MAX_VALUE;
+        BitSet target = new BitSet(nfaStates);
+        BitSet moving = (BitSet) set.clone();
+        moving.and(movers.get(c));
+        for (int i = moving.nextSetBit(0); i >= 0; i = moving.nextSetBit(i + 1)) {
+          kind = Math.min(kind, kinds[i]);
+          for (int j = next[i].nextSetBit(0); j >= 0; j = next[i].nextSetBit(j + 1)) {
+            target.or(expand[j]);
+          }
+        }
+        trans[(s * classCount) + c] = LexerBuilder.AddDfaState(target, kind, sets, setKinds, dfaStates);
+      }
+    }
+
+    int count = sets.size();
+    if (((long) count * classCount) > LexerBuilder.MAX_DFA_SIZE) {
+      JavaCCErrors.warning("Lexical state " + data.global.getStateName(data.getStateIndex())
+          + " needs too large DFA tables, falling back to the NFA.");
+      return;
+    }
+
+    // Minimization by partition refinement
+    int[] block = new int[count];
+    int blocks = 0;
+    Map<String, Integer> keys = new HashMap<>();
+    for (int s = 0; s < count; s++) {
+      String key = (sets.get(s).isEmpty() ? "T" : "N") + setKinds.get(s);
+      Integer b = keys.get(key);
+      if (b == null) {
+        keys.put(key, b = Integer.valueOf(blocks++));
+      }
+      block[s] = b.intValue();
+    }
+
+    for (;;) {
+      keys.clear();
+      int[] refined = new int[count];
+      StringBuilder key = new StringBuilder();
+      for (int s = 0; s < count; s++) {
+        key.setLength(0);
+        key.append(block[s]);
+        for (int c = 0; c < classCount; c++) {
+          key.append(',').append(block[trans[(s * classCount) + c]]);
+        }
+        Integer b = keys.get(key.toString());
+        if (b == null) {
+          keys.put(key.toString(), b = Integer.valueOf(keys.size()));
+        }
+        refined[s] = b.intValue();
+      }
+      block = refined;
+      if (keys.size() == blocks) {
+        break;
+      }
+      blocks = keys.size();
+    }
+
+    // Renumber: the dead state first, then all other states without NFA states left
+    int[] order = new int[blocks];
+    int[] first = new int[blocks];
+    Arrays.fill(first, -1);
+    for (int s = 0; s < count; s++) {
+      if (first[block[s]] == -1) {
+        first[block[s]] = s;
+      }
+    }
+
+    int terminals = 0;
+    Arrays.fill(order, -1);
+    order[block[0]] = terminals++;
+    for (int b = 0; b < blocks; b++) {
+      if ((order[b] == -1) && sets.get(first[b]).isEmpty()) {
+        order[b] = terminals++;
+      }
+    }
+    int id = terminals;
+    for (int b = 0; b < blocks; b++) {
+      if (order[b] == -1) {
+        order[b] = id++;
+      }
+    }
+
+    data.dfaNext = new int[blocks * classCount];
+    data.dfaKinds = new int[blocks];
+    for (int b = 0; b < blocks; b++) {
+      int s = first[b];
+      data.dfaKinds[order[b]] = setKinds.get(s).intValue();
+      for (int c = 0; c < classCount; c++) {
+        data.dfaNext[(order[b] * classCount) + c] = order[block[trans[(s * classCount) + c]]];
+      }
+    }
+
+    data.dfaStart = new int[names];
+    for (int i = 0; i < names; i++) {
+      data.dfaStart[i] = order[block[start[i]]];
+    }
+
+    // Two level character map, identical blocks of 256 characters are shared
+    List<int[]> charBlocks = new ArrayList<>();
+    data.dfaBlocks = new int[256];
+    for (int hi = 0; hi < 256; hi++) {
+      int[] chars = Arrays.copyOfRange(classOf, hi << 8, (hi + 1) << 8);
+      int index = 0;
+      while ((index < charBlocks.size()) && !Arrays.equals(chars, charBlocks.get(index))) {
+        index++;
+      }
+      if (index == charBlocks.size()) {
+        charBlocks.add(chars);
+      }
+      data.dfaBlocks[hi] = index;
+    }
+
+    data.dfaClasses = new int[charBlocks.size() << 8];
+    for (int i = 0; i < charBlocks.size(); i++) {
+      System.arraycopy(charBlocks.get(i), 0, data.dfaClasses, i << 8, 256);
+    }
+    data.dfaClassCount = classCount;
+    data.dfaTerminalCount = terminals;
+  }
+
+  private static int AddDfaState(BitSet set, int kind, List<BitSet> sets, List<Integer> kinds,
+      Map<String, Integer> states) {
+    String key = kind + ":" + set;
+    Integer state = states.get(key);
+    if (state == null) {
+      states.put(key, state = Integer.valueOf(sets.size()));
+      sets.add(set);
+      kinds.add(Integer.valueOf(kind));
+    }
+    return state.intValue();
+  }
+
+  private static boolean CanMove(NfaState state, char c) {
+    if (c < 128) {
+      return ((state.asciiMoves[c / 64] & (1L << (c % 64))) != 0L);
+    }
+
+    if (state.charMoves != null) {
+      for (int i = 0; (i < state.charMoves.length) && (state.charMoves[i] != 0); i++) {
+        if (c == state.charMoves[i]) {
+          return true;
+        }
+      }
+    }
+
+    if (state.rangeMoves != null) {
+      for (int i = 0; (i < state.rangeMoves.length) && (state.rangeMoves[i] != 0); i += 2) {
+        if ((c >= state.rangeMoves[i]) && (c <= state.rangeMoves[i + 1])) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   private final void GetNonAsciiMoves(LexerData data, NfaState state) {
     int i = 0, j = 0;
     char hiByte;
@@ -0,0 +1,260 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: BSD-3-Clause
+
+package org.hivevm.cc.generator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hivevm.cc.parser.BNFProduction;
+import org.hivevm.cc.parser.Choice;
+import org.hivevm.cc.parser.Expansion;
+import org.hivevm.cc.parser.Lookahead;
+import org.hivevm.cc.parser.NonTerminal;
+import org.hivevm.cc.parser.NormalProduction;
+import org.hivevm.cc.parser.OneOrMore;
+import org.hivevm.cc.parser.RegularExpression;
+import org.hivevm.cc.parser.Sequence;
+import org.hivevm.cc.parser.ZeroOrMore;
+import org.hivevm.cc.parser.ZeroOrOne;
+
+/**
+ * Computes the decision table of a lookahead with a fixed amount. The scan of the jj_3 routine is
+ * simulated on symbolic tokens: each token is either a known kind, or any kind but the ones the scan
+ * already tested it against. Whenever the scan tests an unknown token, the simulation is repeated
+ * for both outcomes. The result is a trie over the kinds of the upcoming tokens, which gives the
+ * same answer and reads the same tokens as the routine.
+ *
+ * The table is an int array. The first entry is the offset of the root. A node is the number n of
+ * its edges, n pairs of kind and offset, and the offset for all other kinds. A leaf is
+ * {@link #FAIL} or {@link #MATCH}.
+ */
+class LookaheadTable {
+
+  static final int FAIL  = -1;
+  static final int MATCH = -2;
+
+  // Tables that grow larger are left to the jj_3 routines
+  private static final int MAX_SIZE  = 1024;
+  private static final int MAX_RUNS  = 20000;
+  private static final int MAX_DEPTH = 1000;
+
+  /**
+   * Signals that the scan tested the last token of the prefix against a kind it is not known to be.
+   */
+  @SuppressWarnings("serial")
+  private static class Split extends RuntimeException {
+
+    private final int kind;
+
+    private Split(int kind) {
+      super(null, null, false, false);
+      this.kind = kind;
+    }
+  }
+
+  /**
+   * Signals that the scan can not be decided from the token kinds.
+   */
+  @SuppressWarnings("serial")
+  private static class Unsupported extends RuntimeException {
+
+    private Unsupported() {
+      super(null, null, false, false);
+    }
+  }
+
+  private final ParserData    data;
+  private final Expansion     expansion;
+  private final int           limit;
+  private final List<Integer> table = new ArrayList<>();
+
+  // Kinds of the known tokens, and the kinds the token after them is known not to be
+  private final List<Integer> prefix = new ArrayList<>();
+  private Set<Integer>        excluded;
+
+  private int                 pos;
+  private boolean             done;
+  // Set when the scan reads the token after the prefix
+  private boolean             touched;
+  private int                 depth;
+  private int                 runs;
+
+  private LookaheadTable(ParserData data, Lookahead la) {
+    this.data = data;
+    this.expansion = la.getLaExpansion();
+    this.limit = la.getAmount();
+  }
+
+  /**
+   * Builds the table of the lookahead, or returns <code>null</code> if the scan depends on semantic
+   * lookahead or the table gets too large.
+   */
+  static int[] build(ParserData data, Lookahead la) {
+    if ((la.getAmount() <= 0) || (la.getAmount() == Integer.MAX_VALUE)) {
+      return null;
+    }
+
+    LookaheadTable builder = new LookaheadTable(data, la);
+    try {
+      builder.table.add(0);
+      builder.table.add(LookaheadTable.FAIL);
+      builder.table.add(LookaheadTable.MATCH);
+      builder.table.set(0, builder.buildNode());
+    } catch (Unsupported e) {
+      return null;
+    }
+    return builder.table.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * Builds the node that decides on the token after the prefix, or the leaf if the scan ends without
+   * reading it.
+   */
+  private int buildNode() {
+    Map<Integer, Integer> edges = new LinkedHashMap<>();
+    while (true) {
+      this.excluded = edges.keySet();
+      boolean matched;
+      try {
+        matched = run();
+      } catch (Split split) {
+        this.prefix.add(split.kind);
+        edges.put(split.kind, buildNode());
+        this.prefix.remove(this.prefix.size() - 1);
+        continue;
+      }
+
+      int leaf = matched ? 2 : 1;
+      if (!this.touched) {
+        return leaf;
+      }
+
+      int offset = this.table.size();
+      this.table.add(edges.size());
+      for (Map.Entry<Integer, Integer> edge : edges.entrySet()) {
+        this.table.add(edge.getKey());
+        this.table.add(edge.getValue());
+      }
+      this.table.add(leaf);
+      if (this.table.size() > LookaheadTable.MAX_SIZE) {
+        throw new Unsupported();
+      }
+      return offset;
+    }
+  }
+
+  /**
+   * Simulates the scan of the lookahead on the prefix, returns true if it matches.
+   */
+  private boolean run() {
+    if (++this.runs > LookaheadTable.MAX_RUNS) {
+      throw new Unsupported();
+    }
+    this.pos = 0;
+    this.done = false;
+    this.depth = 0;
+    this.touched = false;
+    return !scan(this.expansion) || this.done;
+  }
+
+  /**
+   * Scans a token like jj_scan_token, returns true if the scan fails or reached the limit.
+   */
+  private boolean scanToken(int kind) {
+    boolean match;
+    if (this.pos < this.prefix.size()) {
+      match = (this.prefix.get(this.pos) == kind);
+    } else {
+      if (!this.excluded.contains(kind)) {
+        throw new Split(kind);
+      }
+      this.touched = true;
+      match = false;
+    }
+    if (!match) {
+      return true;
+    }
+    if (++this.pos == this.limit) {
+      return this.done = true;
+    }
+    return false;
+  }
+
+  /**
+   * Scans an expansion like the jj_3 routine, returns true if the scan fails or reached the limit.
+   */
+  private boolean scan(Expansion e) {
+    if (++this.depth > LookaheadTable.MAX_DEPTH) {
+      throw new Unsupported();
+    }
+    try {
+      if (e instanceof RegularExpression) {
+        return scanToken(((RegularExpression) e).getOrdinal());
+      } else if (e instanceof NonTerminal) {
+        NormalProduction production = this.data.getProduction(((NonTerminal) e).getName());
+        if (!(production instanceof BNFProduction)) {
+          throw new Unsupported();
+        }
+        return scan(production.getExpansion());
+      } else if (e instanceof Choice) {
+        int start = this.pos;
+        for (Expansion choice : ((Choice) e).getChoices()) {
+          Lookahead la = (Lookahead) ((Sequence) choice).getUnits().get(0);
+          if (!la.getActionTokens().isEmpty()) {
+            throw new Unsupported();
+          }
+          if (!scan(choice)) {
+            return false;
+          } else if (this.done) {
+            return true;
+          }
+          this.pos = start;
+        }
+        return true;
+      } else if (e instanceof Sequence) {
+        List<?> units = ((Sequence) e).getUnits();
+        // The first unit is the Lookahead object
+        for (int i = 1; i < units.size(); i++) {
+          if (scan((Expansion) units.get(i))) {
+            return true;
+          }
+        }
+        return false;
+      } else if (e instanceof OneOrMore) {
+        Expansion nested = ((OneOrMore) e).getExpansion();
+        return scan(nested) || scanLoop(nested);
+      } else if (e instanceof ZeroOrMore) {
+        return scanLoop(((ZeroOrMore) e).getExpansion());
+      } else if (e instanceof ZeroOrOne) {
+        int start = this.pos;
+        if (scan(((ZeroOrOne) e).getExpansion())) {
+          if (this.done) {
+            return true;
+          }
+          this.pos = start;
+        }
+        return false;
+      }
+      return false;
+    } finally {
+      this.depth--;
+    }
+  }
+
+  private boolean scanLoop(Expansion nested) {
+    while (true) {
+      int start = this.pos;
+      if (scan(nested)) {
+        if (this.done) {
+          return true;
+        }
+        this.pos = start;
+        return false;
+      }
+    }
+  }
+}
@@ -44,6 +44,7 @@ public class NfaStateData {
   public boolean               hasNFA;
   boolean                      hasMixed;
   boolean                      createStartNfa;
+  boolean                      asciiOnly;
 
   private int                  idCnt;
   private int                  generatedStates;
@@ -60,6 +61,16 @@ public class NfaStateData {
   public Hashtable<String, NfaState>     equivStatesTable;
 
 
+  // DFA tables
+  int   dfaClassCount;
+  int   dfaTerminalCount;
+  int[] dfaBlocks;
+  int[] dfaClasses;
+  int[] dfaNext;
+  int[] dfaKinds;
+  int[] dfaStart;
+
+
   NfaStateData(LexerData data, String name) {
     this.global = data;
     this.lexStateIndex = this.global.getStateIndex(name);
@@ -131,6 +142,13 @@ public class NfaStateData {
     return this.hasMixed;
   }
 
+  /**
+   * Returns true if no NFA state moves on a character above 127.
+   */
+  public final boolean isAsciiOnly() {
+    return this.asciiOnly;
+  }
+
   public final int generatedStates() {
     return this.generatedStates;
   }
@@ -211,4 +229,37 @@ public class NfaStateData {
   public final boolean isSubStringAtPos(int index) {
     return this.subStringAtPos[index];
   }
+
+
+  public final boolean hasDfaTables() {
+    return this.dfaNext != null;
+  }
+
+  public final int getDfaClassCount() {
+    return this.dfaClassCount;
+  }
+
+  public final int getDfaTerminalCount() {
+    return this.dfaTerminalCount;
+  }
+
+  public final int[] getDfaBlocks() {
+    return this.dfaBlocks;
+  }
+
+  public final int[] getDfaClasses() {
+    return this.dfaClasses;
+  }
+
+  public final int[] getDfaNext() {
+    return this.dfaNext;
+  }
+
+  public final int[] getDfaKinds() {
+    return this.dfaKinds;
+  }
+
+  public final int[] getDfaStart() {
+    return this.dfaStart;
+  }
 }
@@ -56,7 +56,14 @@ public class ParserBuilder {
     }
 
     for (Lookahead la : data.getLoakaheads()) {
-      data.addExpansion(la);
+      int[] table = data.getLookaheadTables() ? LookaheadTable.build(data, la) : null;
+      if (table != null) {
+        data.setLookaheadTable(la, table);
+      }
+      // The routine is still needed to rescan the lookahead for the error message
+      if ((table == null) || data.getErrorReporting()) {
+        data.addExpansion(la);
+      }
     }
 
     int phase3index = 0;
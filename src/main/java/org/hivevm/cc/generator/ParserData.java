@@ -9,6 +9,8 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 
+import org.hivevm.cc.HiveCC;
+import org.hivevm.cc.Language;
 import org.hivevm.cc.ParserRequest;
 import org.hivevm.cc.parser.Action;
 import org.hivevm.cc.parser.Choice;
@@ -50,6 +52,7 @@ public class ParserData {
   private final List<int[]>                 maskVals;
   private final Map<Expansion, Lookahead[]> lookaheads;
   private final Map<Lookahead, Integer>     lookaheadIndex;
+  private final Map<Lookahead, int[]>       lookaheadTables;
 
   /**
    * An array used to store the first sets generated by the following method. A true entry means
@@ -73,6 +76,7 @@ public class ParserData {
     this.phase2list = new ArrayList<>();
     this.lookaheads = new HashMap<>();
     this.lookaheadIndex = new HashMap<>();
+    this.lookaheadTables = new HashMap<>();
   }
 
   public final Options options() {
@@ -87,10 +91,54 @@ public class ParserData {
     return this.request.isGenerated();
   }
 
+  /**
+   * Returns true if the parser sets the image of each consumed token, because the token manager
+   * leaves them unset and the actions may reach any token through the token chain.
+   */
+  public final boolean isImageOnConsume() {
+    return options().getLazyTokenImage() && this.request.isTokenChainWalked();
+  }
+
   public final int getDepthLimit() {
     return options().getDepthLimit();
   }
 
+  /**
+   * Returns the size of the lookahead memo table. The memo is disabled when tracing the lookahead or
+   * limiting the depth, as both depend on the routines actually being called.
+   */
+  public final int getLookaheadMemo() {
+    return (getDebugLookahead() || (getDepthLimit() > 0)) ? 0 : options().getLookaheadMemo();
+  }
+
+  /**
+   * Returns true if lookaheads with a fixed amount are decided by tables. Only the Java parser
+   * implements them, and tracing the lookahead needs the routines.
+   */
+  public final boolean getLookaheadTables() {
+    return options().getLookaheadTables() && !getDebugLookahead()
+        && Language.JAVA.name().equalsIgnoreCase(options().stringValue(HiveCC.JJPARSER_CODEGENERATOR));
+  }
+
+  /**
+   * Returns the number of consumed tokens that stay linked in streaming mode, 0 if the parser doesn't
+   * stream. The window covers the largest fixed lookahead, so the error message can still rescan
+   * those lookaheads. A token pool already unlinks the tokens it recycles.
+   */
+  public final int getStreamingWindow() {
+    if (!options().getStreaming() || (options().getTokenPool() > 0)
+        || !Language.JAVA.name().equalsIgnoreCase(options().stringValue(HiveCC.JJPARSER_CODEGENERATOR))) {
+      return 0;
+    }
+    int window = 1;
+    for (Lookahead la : this.phase2list) {
+      if (la.getAmount() != Integer.MAX_VALUE) {
+        window = Math.max(window, la.getAmount());
+      }
+    }
+    return window;
+  }
+
   public final int getLookahead() {
     return options().getLookahead();
   }
@@ -155,6 +203,14 @@ public class ParserData {
     return this.lookaheadIndex.get(lookahead);
   }
 
+  /**
+   * Returns the decision table of the lookahead, or <code>null</code> if it is decided by the jj_3
+   * routine.
+   */
+  public final int[] getLookaheadTable(Lookahead lookahead) {
+    return this.lookaheadTables.get(lookahead);
+  }
+
   public final int jj2Index() {
     return this.jj2index;
   }
@@ -177,6 +233,10 @@ public class ParserData {
     return ++this.jj2index;
   }
 
+  protected final void setLookaheadTable(Lookahead lookahead, int[] table) {
+    this.lookaheadTables.put(lookahead, table);
+  }
+
   protected final void setLookupAhead(Expansion e, Lookahead[] lookaheads) {
     this.lookaheads.put(e, lookaheads);
   }
@@ -14,6 +14,7 @@ public abstract class ParserGenerator extends CodeGenerator<ParserData> {
   protected static final String TOKEN_COUNT      = "TOKEN_COUNT";
   protected static final String TOKEN_MASKS      = "TOKEN_MASKS";
   protected static final String JJPARSER_USE_AST = "USE_AST";
+  protected static final String IMAGE_ON_CONSUME = "IMAGE_ON_CONSUME";
 
 
   // Constants used in the following method "buildLookaheadChecker".
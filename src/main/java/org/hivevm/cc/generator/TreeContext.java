@@ -21,6 +21,8 @@ public class TreeContext extends HiveCCOptions implements TreeOptions {
     set(HiveCC.JJTREE_MULTI, Boolean.FALSE);
     set(HiveCC.JJTREE_NODE_DEFAULT_VOID, Boolean.FALSE);
     set(HiveCC.JJTREE_NODE_SCOPE_HOOK, Boolean.FALSE);
+    set(HiveCC.JJTREE_NODE_ARENA, Boolean.FALSE);
+    set(HiveCC.JJTREE_NODE_USES_PARSER, Boolean.TRUE);
     set(HiveCC.JJTREE_BUILD_NODE_FILES, Boolean.TRUE);
     set(HiveCC.JJTREE_VISITOR, Boolean.FALSE);
     set(HiveCC.JJTREE_TRACK_TOKENS, Boolean.FALSE);
@@ -29,6 +31,7 @@ public class TreeContext extends HiveCCOptions implements TreeOptions {
     set(HiveCC.JJTREE_NODE_CLASS, "");
     set(HiveCC.JJTREE_NODE_FACTORY, "");
     set(HiveCC.JJTREE_NODE_CUSTOM, "");
+    set(HiveCC.JJTREE_NODE_CONTEXT, "");
     set(HiveCC.JJTREE_OUTPUT_FILE, "");
     set(HiveCC.JJTREE_VISITOR_DATA_TYPE, "");
     set(HiveCC.JJTREE_VISITOR_RETURN_TYPE, "Object");
@@ -46,6 +49,13 @@ public class TreeContext extends HiveCCOptions implements TreeOptions {
    * Check options for consistency
    */
   public void validate() {
+    if (getNodeArena() && ((getNodeClass().length() > 0) || !getExcudeNodes().isEmpty())) {
+      JavaCCErrors.semantic_error("NODE_ARENA can't be used with NODE_CLASS or NODE_CUSTOM, since the views of "
+          + "the arena don't keep the fields of the node classes");
+    }
+    if (getNodeUsesParser() && (getNodeContext().length() > 0)) {
+      JavaCCErrors.warning("NODE_CONTEXT option will be ignored since NODE_USES_PARSER is true");
+    }
     if (!getVisitor()) {
       if (getVisitorDataType().length() > 0) {
         JavaCCErrors.warning("VISITOR_DATA_TYPE option will be ignored since VISITOR is false");
@@ -40,6 +40,28 @@ public interface TreeOptions extends Options {
     return booleanValue(HiveCC.JJTREE_NODE_SCOPE_HOOK);
   }
 
+  /**
+   * Find the node arena value. The nodes of an arena are views that are created on each access, so
+   * fields added to the node classes are not kept. NODE_CLASS and NODE_CUSTOM are refused.
+   */
+  default boolean getNodeArena() {
+    return booleanValue(HiveCC.JJTREE_NODE_ARENA);
+  }
+
+  /**
+   * Find the node uses parser value.
+   */
+  default boolean getNodeUsesParser() {
+    return booleanValue(HiveCC.JJTREE_NODE_USES_PARSER);
+  }
+
+  /**
+   * Find the node context value.
+   */
+  default String getNodeContext() {
+    return stringValue(HiveCC.JJTREE_NODE_CONTEXT);
+  }
+
   /**
    * Find the node factory value.
    */
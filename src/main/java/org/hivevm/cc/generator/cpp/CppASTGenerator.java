@@ -6,6 +6,7 @@ package org.hivevm.cc.generator.cpp;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.hivevm.cc.HiveCC;
 import org.hivevm.cc.generator.TemplateProvider;
@@ -159,6 +160,12 @@ class CppASTGenerator extends TreeGenerator {
     options.set("RETURN", returnType.equals("void") ? "" : "return ");
     options.set(HiveCC.JJTREE_MULTI, context.getMulti());
 
+    List<String> names = ASTNodeDescriptor.getNodeNames();
+    List<String> ids = ASTNodeDescriptor.getNodeIds();
+    options.add("WALK_NODES", IntStream.range(0, names.size()).filter(i -> !names.get(i).equals("void")).boxed()
+        .collect(Collectors.toList())).set("label", i -> ids.get(i)).set("name", i -> names.get(i).replace('.', '_'))
+        .set("type", i -> context.getNodePrefix() + names.get(i));
+
     TemplateProvider template = CppTemplate.VISITOR;
     template.render(options, context.getParserName());
   }
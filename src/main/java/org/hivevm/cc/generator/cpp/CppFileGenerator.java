@@ -35,6 +35,8 @@ class CppFileGenerator implements FileGenerator {
     TemplateProvider.render(CppTemplate.READER, context.options());
     TemplateProvider.render(CppTemplate.STRINGREADER, context.options());
     TemplateProvider.render(CppTemplate.STRINGREADER_H, context.options());
+    TemplateProvider.render(CppTemplate.CHARSEQUENCEREADER, context.options());
+    TemplateProvider.render(CppTemplate.CHARSEQUENCEREADER_H, context.options());
 
     TemplateProvider.render(CppTemplate.PARSEEXCEPTION, context.options());
     TemplateProvider.render(CppTemplate.PARSEEXCEPTION_H, context.options());
@@ -1680,7 +1680,13 @@ class CppLexerGenerator extends LexerGenerator {
     writer.println("      else");
     writer.println("      {");
 
-    DumpCharAndRangeMoves(writer, data);
+    if (data.isAsciiOnly() && !data.global.options().getDebugTokenManager()) {
+      // No state moves on the character, the NFA ends behind it
+      writer.println("         ++curPos;");
+      writer.println(data.isMixedState() ? "         break;" : "         return curPos;");
+    } else {
+      DumpCharAndRangeMoves(writer, data);
+    }
 
     writer.println("      }");
 
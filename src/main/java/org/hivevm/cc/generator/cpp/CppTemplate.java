@@ -40,6 +40,8 @@ enum CppTemplate implements TemplateProvider {
   READER("Reader.h"),
   STRINGREADER("StringReader.cc"),
   STRINGREADER_H("StringReader.h"),
+  CHARSEQUENCEREADER("CharSequenceReader.cc"),
+  CHARSEQUENCEREADER_H("CharSequenceReader.h"),
 
   NODE("Node.cc"),
   NODE_H("Node.h"),
@@ -5,8 +5,10 @@ package org.hivevm.cc.generator.java;
 
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import org.hivevm.cc.HiveCC;
@@ -31,15 +33,24 @@ class JavaASTGenerator extends TreeGenerator {
 
     addType(type);
 
+    // The node gets the parser, the context of the tree state or only its id
+    String owner = "";
+    if (context.getNodeUsesParser()) {
+      owner = "this, ";
+    } else if (context.getNodeContext().length() > 0) {
+      owner = "jjtree.getContext(), ";
+    }
+
     writer.print(nodeClass + " " + ns.nodeVar + " = ");
     if (context.getNodeFactory().equals("*")) {
       // Old-style multiple-implementations.
-      writer.println("(" + nodeClass + ")" + nodeClass + ".jjtCreate(" + ns.getNodeDescriptor().getNodeId() + ");");
-    } else if (context.getNodeFactory().length() > 0) {
       writer.println(
-          "(" + nodeClass + ")" + context.getNodeFactory() + ".jjtCreate(" + ns.getNodeDescriptor().getNodeId() + ");");
+          "(" + nodeClass + ")" + nodeClass + ".jjtCreate(" + owner + ns.getNodeDescriptor().getNodeId() + ");");
+    } else if (context.getNodeFactory().length() > 0) {
+      writer.println("(" + nodeClass + ")" + context.getNodeFactory() + ".jjtCreate(" + owner
+          + ns.getNodeDescriptor().getNodeId() + ");");
     } else {
-      writer.println("new " + nodeClass + "(this, " + ns.getNodeDescriptor().getNodeId() + ");");
+      writer.println("new " + nodeClass + "(" + owner + ns.getNodeDescriptor().getNodeId() + ");");
     }
 
     if (ns.usesCloseNodeVar()) {
@@ -169,9 +180,34 @@ class JavaASTGenerator extends TreeGenerator {
 
     provider = JavaTemplate.DEFAULT_VISITOR;
     provider.render(options, context.getParserName());
+
+    List<String> names = ASTNodeDescriptor.getNodeNames();
+    List<String> ids = ASTNodeDescriptor.getNodeIds();
+    options.add("WALK_NODES", IntStream.range(0, names.size()).filter(i -> !names.get(i).equals("void")).boxed()
+        .collect(Collectors.toList())).set("label", i -> ids.get(i)).set("name", i -> names.get(i).replace('.', '_'))
+        .set("type", i -> context.getMulti() ? context.getNodePrefix() + names.get(i) : "Node");
+
+    provider = JavaTemplate.WALKER;
+    provider.render(options, context.getParserName());
   }
 
   private void generateNode(TreeOptions context) {
+    if (context.getNodeArena()) {
+      List<String> names = ASTNodeDescriptor.getNodeNames();
+      List<String> ids = ASTNodeDescriptor.getNodeIds();
+      TemplateOptions options = new TemplateOptions(context);
+      options.add("NODE_VIEWS", IntStream.range(0, names.size()).filter(i -> !names.get(i).equals("void")).boxed()
+          .collect(Collectors.toList())).set("label", i -> ids.get(i)).set("type", i -> context.getNodePrefix() + names.get(i));
+
+      TemplateProvider provider = JavaTemplate.TREE_ARENA;
+      provider.render(options, context.getParserName());
+
+      // The node of the arena replaces the default node
+      provider = JavaTemplate.ARENA_NODE;
+      provider.render(context, context.getParserName());
+      return;
+    }
+
     TemplateProvider provider = JavaTemplate.NODE;
     provider.render(context);
   }
@@ -16,12 +16,16 @@ class JavaFileGenerator implements FileGenerator {
   @Override
   public final void generate(LexerData context) throws ParseException {
     TemplateProvider.render(JavaTemplate.TOKEN, context.options());
+    TemplateProvider.render(JavaTemplate.TOKEN_BATCH, context.options());
     TemplateProvider.render(JavaTemplate.TOKEN_EXCEPTION, context.options());
 
     TemplateProvider.render(JavaTemplate.PROVIDER, context.options());
     TemplateProvider.render(JavaTemplate.STRING_PROVIDER, context.options());
     TemplateProvider.render(JavaTemplate.STREAM_PROVIDER, context.options());
+    TemplateProvider.render(JavaTemplate.MAPPED_FILE_PROVIDER, context.options());
+    TemplateProvider.render(JavaTemplate.PUSH_PROVIDER, context.options());
     TemplateProvider.render(JavaTemplate.CHAR_STREAM, context.options());
+    TemplateProvider.render(JavaTemplate.CHAR_SEQUENCE_STREAM, context.options());
 
     TemplateProvider.render(JavaTemplate.PARSER_EXCEPTION, context.options());
   }
@@ -10,6 +10,7 @@ import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Locale;
+import java.util.regex.Pattern;
 
 import org.hivevm.cc.Language;
 import org.hivevm.cc.generator.LexerData;
@@ -33,6 +34,9 @@ import org.hivevm.cc.utils.TemplateOptions;
  */
 class JavaLexerGenerator extends LexerGenerator {
 
+  // A lexical action that reads the matched token, under LAZY_TOKEN_IMAGE its image is set before
+  private static final Pattern MATCHED_TOKEN = Pattern.compile("\\bmatchedToken\\b");
+
   @Override
   public final void generate(LexerData data) {
     if (JavaCCErrors.hasError()) {
@@ -124,8 +128,8 @@ class JavaLexerGenerator extends LexerGenerator {
   private void DumpStaticVarDeclarations(PrintWriter writer, LexerData data) {
     if (data.maxLexStates() > 1) {
       writer.println();
-      writer.println("/** Lex State array. */");
-      writer.print("public static final int[] jjnewLexState = {");
+      writer.println("/** Lex State array, shared by all token managers and never written. */");
+      writer.print("private static final int[] jjnewLexState = {");
 
       for (int i = 0; i < data.maxOrdinal(); i++) {
         if ((i % 25) == 0) {
@@ -143,7 +147,7 @@ class JavaLexerGenerator extends LexerGenerator {
 
     if (data.hasSkip() || data.hasMore() || data.hasSpecial()) {
       // Bit vector for TOKEN
-      writer.print("static final long[] jjtoToken = {");
+      writer.print("private static final long[] jjtoToken = {");
       for (int i = 0; i < ((data.maxOrdinal() / 64) + 1); i++) {
         if ((i % 4) == 0) {
           writer.print("\n   ");
@@ -155,7 +159,7 @@ class JavaLexerGenerator extends LexerGenerator {
 
     if (data.hasSkip() || data.hasSpecial()) {
       // Bit vector for SKIP
-      writer.print("static final long[] jjtoSkip = {");
+      writer.print("private static final long[] jjtoSkip = {");
       for (int i = 0; i < ((data.maxOrdinal() / 64) + 1); i++) {
         if ((i % 4) == 0) {
           writer.print("\n   ");
@@ -167,7 +171,7 @@ class JavaLexerGenerator extends LexerGenerator {
 
     if (data.hasSpecial()) {
       // Bit vector for SPECIAL
-      writer.print("static final long[] jjtoSpecial = {");
+      writer.print("private static final long[] jjtoSpecial = {");
       for (int i = 0; i < ((data.maxOrdinal() / 64) + 1); i++) {
         if ((i % 4) == 0) {
           writer.print("\n   ");
@@ -179,7 +183,7 @@ class JavaLexerGenerator extends LexerGenerator {
 
     if (data.hasMore()) {
       // Bit vector for MORE
-      writer.print("static final long[] jjtoMore = {");
+      writer.print("private static final long[] jjtoMore = {");
       for (int i = 0; i < ((data.maxOrdinal() / 64) + 1); i++) {
         if ((i % 4) == 0) {
           writer.print("\n   ");
@@ -231,37 +235,35 @@ class JavaLexerGenerator extends LexerGenerator {
       }
 
       if (data.singlesToSkip(i).HasTransitions()) {
-        // added the backup(0) to make JIT happy
-        writer.println(prefix + "try { input_stream.backup(0);");
         if ((data.singlesToSkip(i).asciiMoves[0] != 0L) && (data.singlesToSkip(i).asciiMoves[1] != 0L)) {
           writer.println(
-              prefix + "   while ((curChar < 64" + " && (0x" + Long.toHexString(data.singlesToSkip(i).asciiMoves[0])
-                  + "L & (1L << curChar)) != 0L) || \n" + prefix + "          (curChar >> 6) == 1" + " && (0x"
+              prefix + "while ((curChar < 64" + " && (0x" + Long.toHexString(data.singlesToSkip(i).asciiMoves[0])
+                  + "L & (1L << curChar)) != 0L) || \n" + prefix + "       (curChar >> 6) == 1" + " && (0x"
                   + Long.toHexString(data.singlesToSkip(i).asciiMoves[1]) + "L & (1L << (curChar & 077))) != 0L)");
         } else if (data.singlesToSkip(i).asciiMoves[1] == 0L) {
           writer.println(
-              prefix + "   while (curChar <= " + (int) LexerGenerator.MaxChar(data.singlesToSkip(i).asciiMoves[0])
+              prefix + "while (curChar <= " + (int) LexerGenerator.MaxChar(data.singlesToSkip(i).asciiMoves[0])
                   + " && (0x" + Long.toHexString(data.singlesToSkip(i).asciiMoves[0]) + "L & (1L << curChar)) != 0L)");
         } else if (data.singlesToSkip(i).asciiMoves[0] == 0L) {
-          writer.println(prefix + "   while (curChar > 63 && curChar <= "
+          writer.println(prefix + "while (curChar > 63 && curChar <= "
               + (LexerGenerator.MaxChar(data.singlesToSkip(i).asciiMoves[1]) + 64) + " && (0x"
               + Long.toHexString(data.singlesToSkip(i).asciiMoves[1]) + "L & (1L << (curChar & 077))) != 0L)");
         }
 
+        writer.println(prefix + "{");
         if (data.options().getDebugTokenManager()) {
-          writer.println(prefix + "{");
           writer.println("      debugStream.println("
               + (data.maxLexStates() > 1 ? "\"<\" + lexStateNames[curLexState] + \">\" + " : "")
               + "\"Skipping character : \" + TokenException.addEscapes(String.valueOf(curChar)) + \" (\" + (int)curChar + \")\");");
+          writer.println(prefix + "   if ((curChar = input_stream.startToken()) == JavaCharStream.EOF)");
+        } else {
+          // The stream skips the whole run of characters at once
+          writer.println(prefix + "   if ((curChar = input_stream.SkipToken(0x"
+              + Long.toHexString(data.singlesToSkip(i).asciiMoves[0]) + "L, 0x"
+              + Long.toHexString(data.singlesToSkip(i).asciiMoves[1]) + "L)) == JavaCharStream.EOF)");
         }
-        writer.println(prefix + "      curChar = input_stream.BeginToken();");
-
-        if (data.options().getDebugTokenManager()) {
-          writer.println(prefix + "}");
-        }
-
+        writer.println(prefix + "      continue EOFLoop;");
         writer.println(prefix + "}");
-        writer.println(prefix + "catch (java.io.IOException e1) { continue EOFLoop; }");
       }
 
       if ((data.initMatch(i) != Integer.MAX_VALUE) && (data.initMatch(i) != 0)) {
@@ -391,12 +393,16 @@ class JavaLexerGenerator extends LexerGenerator {
 
             writer.println(prefix + "            matchedToken = jjFillToken();");
 
-            writer.println(prefix + "            if (specialToken == null)");
-            writer.println(prefix + "               specialToken = matchedToken;");
-            writer.println(prefix + "            else");
+            // The shared token of a batch would be linked to itself
+            writer.println(prefix + "            if (jjbatch == null)");
             writer.println(prefix + "            {");
-            writer.println(prefix + "               matchedToken.specialToken = specialToken;");
-            writer.println(prefix + "               specialToken = (specialToken.next = matchedToken);");
+            writer.println(prefix + "               if (specialToken == null)");
+            writer.println(prefix + "                  specialToken = matchedToken;");
+            writer.println(prefix + "               else");
+            writer.println(prefix + "               {");
+            writer.println(prefix + "                  matchedToken.specialToken = specialToken;");
+            writer.println(prefix + "                  specialToken = (specialToken.next = matchedToken);");
+            writer.println(prefix + "               }");
             writer.println(prefix + "            }");
 
             if (data.hasSkipActions()) {
@@ -436,8 +442,8 @@ class JavaLexerGenerator extends LexerGenerator {
           writer.println(prefix + "      curPos = 0;");
           writer.println(prefix + "      jjmatchedKind = 0x" + Integer.toHexString(Integer.MAX_VALUE) + ";");
 
-          writer.println(prefix + "      try {");
-          writer.println(prefix + "         curChar = input_stream.readChar();");
+          writer.println(prefix + "      if ((curChar = input_stream.read()) != JavaCharStream.EOF)");
+          writer.println(prefix + "      {");
 
           if (data.options().getDebugTokenManager()) {
             writer.println("   debugStream.println("
@@ -448,7 +454,6 @@ class JavaLexerGenerator extends LexerGenerator {
           }
           writer.println(prefix + "         continue;");
           writer.println(prefix + "      }");
-          writer.println(prefix + "      catch (java.io.IOException e1) { }");
         }
       }
 
@@ -457,10 +462,11 @@ class JavaLexerGenerator extends LexerGenerator {
       writer.println(prefix + "   int error_column = input_stream.getEndColumn();");
       writer.println(prefix + "   String error_after = null;");
       writer.println(prefix + "   boolean EOFSeen = false;");
-      writer.println(prefix + "   try { input_stream.readChar(); input_stream.backup(1); }");
-      writer.println(prefix + "   catch (java.io.IOException e1) {");
+      writer.println(prefix + "   if (input_stream.read() == JavaCharStream.EOF) {");
       writer.println(prefix + "      EOFSeen = true;");
       writer.println(prefix + "      error_after = curPos <= 1 ? \"\" : input_stream.GetImage();");
+      writer.println(prefix + "      if (curChar == JavaCharStream.EOF)");
+      writer.println(prefix + "         curChar = input_stream.GetSuffix(1)[0];");
       writer.println(prefix + "      if (curChar == '\\n' || curChar == '\\r') {");
       writer.println(prefix + "         error_line++;");
       writer.println(prefix + "         error_column = 0;");
@@ -468,6 +474,8 @@ class JavaLexerGenerator extends LexerGenerator {
       writer.println(prefix + "      else");
       writer.println(prefix + "         error_column++;");
       writer.println(prefix + "   }");
+      writer.println(prefix + "   else");
+      writer.println(prefix + "      input_stream.backup(1);");
       writer.println(prefix + "   if (!EOFSeen) {");
       writer.println(prefix + "      input_stream.backup(1);");
       writer.println(prefix + "      error_after = curPos <= 1 ? \"\" : input_stream.GetImage();");
@@ -523,6 +531,10 @@ class JavaLexerGenerator extends LexerGenerator {
         } else {
           writer.println("(input_stream.GetSuffix(jjimageLen + (lengthOfMatch = jjmatchedPos + 1)));");
         }
+        if (JavaLexerGenerator.isImageNeeded(data, act)) {
+          writer.println("         if (matchedToken != null)");
+          writer.println("            matchedToken.getImage();");
+        }
 
         genTokenSetup(act.getActionTokens().get(0));
         resetColumn();
@@ -598,6 +610,15 @@ class JavaLexerGenerator extends LexerGenerator {
     }
   }
 
+  /**
+   * Returns <code>true</code> if the lexical action reads the matched token, whose image the token
+   * manager leaves unset.
+   */
+  private static boolean isImageNeeded(LexerData data, Action act) {
+    return data.options().getLazyTokenImage()
+        && act.getActionTokens().stream().anyMatch(t -> JavaLexerGenerator.MATCHED_TOKEN.matcher(t.image).find());
+  }
+
   private void DumpTokenActions(PrintWriter writer, LexerData data) {
     Action act;
     int i;
@@ -647,6 +668,9 @@ class JavaLexerGenerator extends LexerGenerator {
             writer.println("(input_stream.GetSuffix(jjimageLen + (lengthOfMatch = jjmatchedPos + 1)));");
           }
         }
+        if (JavaLexerGenerator.isImageNeeded(data, act)) {
+          writer.println("        matchedToken.getImage();");
+        }
 
         genTokenSetup(act.getActionTokens().get(0));
         resetColumn();
@@ -666,7 +690,7 @@ class JavaLexerGenerator extends LexerGenerator {
   private void DumpStateSets(PrintWriter writer, LexerData data) {
     int cnt = 0;
 
-    writer.print("static final int[] jjnextStates = {");
+    writer.print("private static final int[] jjnextStates = {");
     if (data.getOrderedStateSet().size() > 0) {
       for (int[] set : data.getOrderedStateSet()) {
         for (int element : set) {
@@ -764,8 +788,8 @@ class JavaLexerGenerator extends LexerGenerator {
           + "+ (jjmatchedPos + 1) + \" characters as a \" + tokenImage[jjmatchedKind] + \" token.\");");
     }
 
-    writer.println("   try { curChar = input_stream.readChar(); }");
-    writer.println("   catch(java.io.IOException e) { return pos + 1; }");
+    writer.println("   if ((curChar = input_stream.read()) == JavaCharStream.EOF)");
+    writer.println("      return pos + 1;");
 
     if (data.global.options().getDebugTokenManager()) {
       writer.println("   debugStream.println("
@@ -1182,8 +1206,8 @@ class JavaLexerGenerator extends LexerGenerator {
           writer.println(" + \" } \");");
         }
 
-        writer.println("   try { curChar = input_stream.readChar(); }");
-        writer.println("   catch(java.io.IOException e) {");
+        writer.println("   if ((curChar = input_stream.read()) == JavaCharStream.EOF)");
+        writer.println("   {");
 
         if (!data.isMixedState() && (data.generatedStates() != 0)) {
           writer.print("      jjStopStringLiteralDfa" + data.getLexerStateSuffix() + "(" + (i - 1) + ", ");
@@ -1488,6 +1512,10 @@ class JavaLexerGenerator extends LexerGenerator {
 
   @Override
   protected final void dumpMoveNfa(PrintWriter writer, NfaStateData data) {
+    if (data.hasDfaTables()) {
+      DumpDfaTables(writer, data);
+    }
+
     writer.println("private int " + "jjMoveNfa" + data.getLexerStateSuffix() + "(int startState, int curPos)");
     writer.println("{");
     if (data.generatedStates() == 0) {
@@ -1501,11 +1529,42 @@ class JavaLexerGenerator extends LexerGenerator {
       writer.println("   int strPos = jjmatchedPos;");
       writer.println("   int seenUpto;");
       writer.println("   input_stream.backup(seenUpto = curPos + 1);");
-      writer.println("   try { curChar = input_stream.readChar(); }");
-      writer.println("   catch(java.io.IOException e) { throw new Error(\"Internal Error\"); }");
+      writer.println("   if ((curChar = input_stream.read()) == JavaCharStream.EOF)");
+      writer.println("      throw new Error(\"Internal Error\");");
       writer.println("   curPos = 0;");
     }
 
+    if (data.hasDfaTables()) {
+      DumpDfaMoves(writer, data);
+    } else {
+      DumpNfaMoves(writer, data);
+    }
+
+    if (data.isMixedState()) {
+      writer.println("   if (jjmatchedPos > strPos)");
+      writer.println("      return curPos;");
+      writer.println("");
+      writer.println("   int toRet = Math.max(curPos, seenUpto);");
+      writer.println("");
+      writer.println("   if (curPos < toRet)");
+      writer.println("      for (i = toRet - Math.min(curPos, seenUpto); i-- > 0; )");
+      writer.println("         if ((curChar = input_stream.read()) == JavaCharStream.EOF)");
+      writer.println("            throw new Error(\"Internal Error : Please send a bug report.\");");
+      writer.println("");
+      writer.println("   if (jjmatchedPos < strPos)");
+      writer.println("   {");
+      writer.println("      jjmatchedKind = strKind;");
+      writer.println("      jjmatchedPos = strPos;");
+      writer.println("   }");
+      writer.println("   else if (jjmatchedPos == strPos && jjmatchedKind > strKind)");
+      writer.println("      jjmatchedKind = strKind;");
+      writer.println("");
+      writer.println("   return toRet;");
+    }
+    writer.println("}");
+  }
+
+  private void DumpNfaMoves(PrintWriter writer, NfaStateData data) {
     writer.println("   int startsAt = 0;");
     writer.println("   jjnewStateCnt = " + data.generatedStates() + ";");
     writer.println("   int i = 1;");
@@ -1546,7 +1605,13 @@ class JavaLexerGenerator extends LexerGenerator {
     writer.println("      else");
     writer.println("      {");
 
-    DumpCharAndRangeMoves(writer, data);
+    if (data.isAsciiOnly() && !data.global.options().getDebugTokenManager()) {
+      // No state moves on the character, the NFA ends behind it
+      writer.println("         ++curPos;");
+      writer.println(data.isMixedState() ? "         break;" : "         return curPos;");
+    } else {
+      DumpCharAndRangeMoves(writer, data);
+    }
 
     writer.println("      }");
 
@@ -1579,11 +1644,11 @@ class JavaLexerGenerator extends LexerGenerator {
           + "jjKindsForStateVector(curLexState, jjstateSet, startsAt, i));");
     }
 
-    writer.println("      try { curChar = input_stream.readChar(); }");
+    writer.println("      if ((curChar = input_stream.read()) == JavaCharStream.EOF)");
     if (data.isMixedState()) {
-      writer.println("      catch(java.io.IOException e) { break; }");
+      writer.println("         break;");
     } else {
-      writer.println("      catch(java.io.IOException e) { return curPos; }");
+      writer.println("         return curPos;");
     }
 
     if (data.global.options().getDebugTokenManager()) {
@@ -1594,29 +1659,110 @@ class JavaLexerGenerator extends LexerGenerator {
     }
 
     writer.println("   }");
+  }
+
+  private void DumpDfaMoves(PrintWriter writer, NfaStateData data) {
+    String suffix = data.getLexerStateSuffix();
+    int classCount = data.getDfaClassCount();
 
     if (data.isMixedState()) {
-      writer.println("   if (jjmatchedPos > strPos)");
-      writer.println("      return curPos;");
-      writer.println("");
-      writer.println("   int toRet = Math.max(curPos, seenUpto);");
-      writer.println("");
-      writer.println("   if (curPos < toRet)");
-      writer.println("      for (i = toRet - Math.min(curPos, seenUpto); i-- > 0; )");
-      writer.println("         try { curChar = input_stream.readChar(); }");
-      writer.println("         catch(java.io.IOException e) { "
-          + "throw new Error(\"Internal Error : Please send a bug report.\"); }");
-      writer.println("");
-      writer.println("   if (jjmatchedPos < strPos)");
-      writer.println("   {");
-      writer.println("      jjmatchedKind = strKind;");
-      writer.println("      jjmatchedPos = strPos;");
-      writer.println("   }");
-      writer.println("   else if (jjmatchedPos == strPos && jjmatchedKind > strKind)");
-      writer.println("      jjmatchedKind = strKind;");
-      writer.println("");
-      writer.println("   return toRet;");
+      writer.println("   int i;");
     }
-    writer.println("}");
+    writer.println("   int kind;");
+    writer.println("   int state = startState < 0 ? 0 : jjdfaStart" + suffix + "[startState];");
+
+    if (data.global.options().getDebugTokenManager()) {
+      writer.println("      debugStream.println("
+          + (data.global.maxLexStates() > 1 ? "\"<\" + lexStateNames[curLexState] + \">\" + " : "")
+          + "\"Current character : \" + TokenException.addEscapes(String.valueOf(curChar)) + \" (\" + (int)curChar + \") "
+          + "at line \" + input_stream.getEndLine() + \" column \" + input_stream.getEndColumn());");
+    }
+
+    writer.println("   for (;;)");
+    writer.println("   {");
+    writer.println("      state = jjdfaNext" + suffix + "[state * " + classCount + " + jjdfaClasses" + suffix
+        + "[(jjdfaBlocks" + suffix + "[curChar >> 8] << 8) | (curChar & 0xff)]];");
+    writer.println("      if ((kind = jjdfaKinds" + suffix + "[state]) >= 0)");
+    writer.println("      {");
+    writer.println("         jjmatchedKind = kind;");
+    writer.println("         jjmatchedPos = curPos;");
+    writer.println("      }");
+    writer.println("      ++curPos;");
+
+    if (data.global.options().getDebugTokenManager()) {
+      writer.println(
+          "      if (jjmatchedKind != 0 && jjmatchedKind != 0x" + Integer.toHexString(Integer.MAX_VALUE) + ")");
+      writer.println("         debugStream.println("
+          + "\"   Currently matched the first \" + (jjmatchedPos + 1) + \" characters as"
+          + " a \" + tokenImage[jjmatchedKind] + \" token.\");");
+    }
+
+    writer.println("      if (state < " + data.getDfaTerminalCount() + ")");
+    if (data.isMixedState()) {
+      writer.println("         break;");
+    } else {
+      writer.println("         return curPos;");
+    }
+
+    writer.println("      if ((curChar = input_stream.read()) == JavaCharStream.EOF)");
+    if (data.isMixedState()) {
+      writer.println("         break;");
+    } else {
+      writer.println("         return curPos;");
+    }
+
+    if (data.global.options().getDebugTokenManager()) {
+      writer.println("      debugStream.println("
+          + (data.global.maxLexStates() > 1 ? "\"<\" + lexStateNames[curLexState] + \">\" + " : "")
+          + "\"Current character : \" + TokenException.addEscapes(String.valueOf(curChar)) + \" (\" + (int)curChar + \") "
+          + "at line \" + input_stream.getEndLine() + \" column \" + input_stream.getEndColumn());");
+    }
+    writer.println("   }");
+  }
+
+  /**
+   * Dumps the DFA tables of a lexical state as run-length encoded strings, unpacked once when the
+   * class is loaded. This keeps large tables out of the static initializer.
+   */
+  private void DumpDfaTables(PrintWriter writer, NfaStateData data) {
+    String suffix = data.getLexerStateSuffix();
+    int[] kinds = new int[data.getDfaKinds().length];
+    for (int i = 0; i < kinds.length; i++) {
+      kinds[i] = (data.getDfaKinds()[i] == Integer.MAX_VALUE) ? 0 : data.getDfaKinds()[i] + 1;
+    }
+
+    DumpPackedTable(writer, "jjdfaBlocks" + suffix, data.getDfaBlocks(), 0);
+    DumpPackedTable(writer, "jjdfaClasses" + suffix, data.getDfaClasses(), 0);
+    DumpPackedTable(writer, "jjdfaNext" + suffix, data.getDfaNext(), 0);
+    DumpPackedTable(writer, "jjdfaKinds" + suffix, kinds, -1);
+    DumpPackedTable(writer, "jjdfaStart" + suffix, data.getDfaStart(), 0);
+  }
+
+  private static void DumpPackedTable(PrintWriter writer, String name, int[] values, int offset) {
+    writer.print("private static final int[] " + name + " = jjUnpack(" + values.length + ", " + offset + ",");
+    int pairs = 0;
+    for (int i = 0; i < values.length;) {
+      int count = 1;
+      while (((i + count) < values.length) && (values[i + count] == values[i]) && (count < 0xffff)) {
+        count++;
+      }
+
+      // Separate strings keep each constant below the class file limit
+      if (pairs == 0) {
+        writer.print("\n   \"");
+      } else if ((pairs % 8192) == 0) {
+        writer.print("\",\n   \"");
+      } else if ((pairs % 8) == 0) {
+        writer.print("\" +\n   \"");
+      }
+      writer.print(JavaLexerGenerator.toPackedChar(count) + JavaLexerGenerator.toPackedChar(values[i]));
+      pairs++;
+      i += count;
+    }
+    writer.println("\");");
+  }
+
+  private static String toPackedChar(int c) {
+    return (c < 0x100) ? String.format("\\%03o", c) : String.format("\\u%04x", c);
   }
 }
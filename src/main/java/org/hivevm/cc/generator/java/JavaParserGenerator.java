@@ -4,10 +4,17 @@
 package org.hivevm.cc.generator.java;
 
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import org.hivevm.cc.HiveCC;
 import org.hivevm.cc.Language;
 import org.hivevm.cc.generator.ParserData;
 import org.hivevm.cc.generator.ParserGenerator;
@@ -34,10 +41,29 @@ import org.hivevm.cc.utils.TemplateOptions;
  */
 class JavaParserGenerator extends ParserGenerator {
 
+  // Number of the lookahead routines that are memoized
+  private int memoCount;
+
+  // Code that reads the current token, under LAZY_TOKEN_IMAGE its image is set before
+  private static final Pattern CURRENT_TOKEN = Pattern.compile("\\btoken\\b");
+
+  // LL(1) choices with at least this many case labels are dispatched by a table
+  private static final int SWITCH_TABLE_LABELS = 64;
+
+  // Number of the switch tables, and the tables and methods of the current production
+  private int                switchCount;
+  private final List<String> switchMembers = new ArrayList<>();
+
   @Override
   public void generate(ParserData data) {
     TemplateOptions options = new TemplateOptions(data.options());
+    options.set(HiveCC.JJPARSER_LOOKAHEAD_MEMO, data.getLookaheadMemo());
+    options.set(HiveCC.JJPARSER_LOOKAHEAD_TABLES, data.getLookaheadTables());
+    options.set(HiveCC.JJPARSER_STREAMING, data.getStreamingWindow());
+    this.memoCount = 0;
+    this.switchCount = 0;
     options.set(ParserGenerator.JJPARSER_USE_AST, data.isGenerated());
+    options.set(ParserGenerator.IMAGE_ON_CONSUME, data.isImageOnConsume());
     options.set(ParserGenerator.LOOKAHEAD_NEEDED, data.isLookAheadNeeded());
     options.set(ParserGenerator.JJ2_INDEX, data.jj2Index());
     options.set(ParserGenerator.MASK_INDEX, data.maskIndex());
@@ -51,12 +77,13 @@ class JavaParserGenerator extends ParserGenerator {
 
     options.add("NORMALPRODUCTIONS", data.getProductions()).set("phase",
         (n, p) -> generatePhase1((BNFProduction) n, generatePhase1Expansion(data, n.getExpansion()), p, data));
-    options.add("LOOKAHEADS", data.getLoakaheads()).set("phase", (e, p) -> generatePhase2(e.getLaExpansion(), p, data));
+    options.add("LOOKAHEADS", data.getLoakaheads()).set("phase", (e, p) -> generatePhase2(e, p, data));
     options.add("EXPANSIONS", data.getExpansions()).set("phase",
         (e, p) -> generatePhase3Routine(data, e, data.getCount(e), p));
 
     TemplateProvider provider = JavaTemplate.PARSER;
     provider.render(options, data.getParserName());
+    JavaTemplate.PARSER_POOL.render(options, data.getParserName());
   }
 
   @Override
@@ -103,6 +130,41 @@ class JavaParserGenerator extends ParserGenerator {
       writer.print(getTrailingComments(t));
     }
 
+    printPhase1Code(code, indentamt, writer);
+
+    if (p.getDeclarationEndTokens().size() != 0) {
+      writer.print(genImageSetup(data, p.getDeclarationEndTokens()));
+      genTokenSetup((p.getDeclarationEndTokens().get(0)));
+      for (Iterator<Token> it = p.getDeclarationEndTokens().iterator(); it.hasNext();) {
+        t = it.next();
+        writer.print(getStringToPrint(t));
+      }
+      writer.println();
+    }
+
+    if (data.getDebugParser()) {
+      writer.println("    } finally {");
+      writer.println("      trace_return(\"" + Encoding.escapeUnicode(p.getLhs(), Language.JAVA) + "\");");
+      writer.println("    }");
+    }
+    if (data.getDepthLimit() > 0) {
+      writer.println(" } finally {");
+      writer.println("   --jj_depth;");
+      writer.println(" }");
+    }
+    writer.println("}");
+    writer.println();
+
+    for (String member : this.switchMembers) {
+      writer.print(member);
+    }
+    this.switchMembers.clear();
+  }
+
+  /**
+   * Prints the code of a phase 1 routine, interpreting the indentation characters.
+   */
+  private void printPhase1Code(String code, int indentamt, PrintWriter writer) {
     char ch = ' ';
     char prevChar;
     boolean indentOn = true;
@@ -134,28 +196,18 @@ class JavaParserGenerator extends ParserGenerator {
       }
     }
     writer.println();
+  }
 
-    if (p.getDeclarationEndTokens().size() != 0) {
-      genTokenSetup((p.getDeclarationEndTokens().get(0)));
-      for (Iterator<Token> it = p.getDeclarationEndTokens().iterator(); it.hasNext();) {
-        t = it.next();
-        writer.print(getStringToPrint(t));
-      }
-      writer.println();
-    }
-
-    if (data.getDebugParser()) {
-      writer.println("    } finally {");
-      writer.println("      trace_return(\"" + Encoding.escapeUnicode(p.getLhs(), Language.JAVA) + "\");");
-      writer.println("    }");
-    }
-    if (data.getDepthLimit() > 0) {
-      writer.println(" } finally {");
-      writer.println("   --jj_depth;");
-      writer.println(" }");
+  /**
+   * Returns the code that sets the image of the current token, if the code reads it and the token
+   * manager leaves the images unset.
+   */
+  private static String genImageSetup(ParserData data, List<Token> tokens) {
+    if (data.options().getLazyTokenImage() && !data.isImageOnConsume()
+        && tokens.stream().anyMatch(t -> JavaParserGenerator.CURRENT_TOKEN.matcher(t.image).find())) {
+      return "jj_image(token);";
     }
-    writer.println("}");
-    writer.println();
+    return "";
   }
 
   private String generatePhase1Expansion(ParserData data, Expansion e) {
@@ -174,20 +226,31 @@ class JavaParserGenerator extends ParserGenerator {
         retval += " = ";
       }
       String tail = e_nrw.getRhsToken() == null ? ");" : ")." + e_nrw.getRhsToken().image + ";";
+      String head = "jj_consume_token(";
+      // The image of a token that is handed to the actions is set, the others stay lazy
+      if (data.options().getLazyTokenImage() && !data.isImageOnConsume()
+          && (!e_nrw.getLhsTokens().isEmpty() || (e_nrw.getRhsToken() != null))) {
+        head = "jj_image(" + head;
+        tail = ")" + tail;
+      }
       if (e_nrw.getLabel().equals("")) {
         Object label = data.getNameOfToken(e_nrw.getOrdinal());
         if (label != null) {
-          retval += "jj_consume_token(" + (String) label + tail;
+          retval += head + (String) label + tail;
         } else {
-          retval += "jj_consume_token(" + e_nrw.getOrdinal() + tail;
+          retval += head + e_nrw.getOrdinal() + tail;
         }
       } else {
-        retval += "jj_consume_token(" + e_nrw.getLabel() + tail;
+        retval += head + e_nrw.getLabel() + tail;
       }
 
     } else if (e instanceof NonTerminal) {
       NonTerminal e_nrw = (NonTerminal) e;
       retval += "\n";
+      String setup = genImageSetup(data, e_nrw.getArgumentTokens());
+      if (!setup.isEmpty()) {
+        retval += setup + "\n";
+      }
       if (e_nrw.getLhsTokens().size() != 0) {
         genTokenSetup((e_nrw.getLhsTokens().get(0)));
         for (Iterator<Token> it = e_nrw.getLhsTokens().iterator(); it.hasNext();) {
@@ -209,6 +272,10 @@ class JavaParserGenerator extends ParserGenerator {
       retval += ");";
     } else if (e instanceof Action) {
       Action e_nrw = (Action) e;
+      String setup = genImageSetup(data, e_nrw.getActionTokens());
+      if (!setup.isEmpty()) {
+        retval += "\n" + setup;
+      }
       retval += "\u0003\n";
       if (!e_nrw.getActionTokens().isEmpty()) {
         genTokenSetup((e_nrw.getActionTokens().get(0)));
@@ -228,12 +295,12 @@ class JavaParserGenerator extends ParserGenerator {
       // In previous line, the "throw" never throws an exception since the
       // evaluation of jj_consume_token(-1) causes ParseException to be
       // thrown first.
-      Sequence nestedSeq;
+      Sequence[] alternatives = new Sequence[e_nrw.getChoices().size()];
       for (int i = 0; i < e_nrw.getChoices().size(); i++) {
-        nestedSeq = (Sequence) (e_nrw.getChoices().get(i));
-        actions[i] = generatePhase1Expansion(data, nestedSeq);
+        alternatives[i] = (Sequence) (e_nrw.getChoices().get(i));
+        actions[i] = generatePhase1Expansion(data, alternatives[i]);
       }
-      retval = genLookaheadChecker(data, conds, actions);
+      retval = genLookaheadChecker(data, conds, actions, alternatives);
     } else if (e instanceof Sequence) {
       Sequence e_nrw = (Sequence) e;
       // We skip the first element in the following iteration since it is the
@@ -294,10 +361,22 @@ class JavaParserGenerator extends ParserGenerator {
    * that action.
    */
   private String genLookaheadChecker(ParserData data, Lookahead[] conds, String[] actions) {
+    return genLookaheadChecker(data, conds, actions, null);
+  }
+
+  /**
+   * Generates the lookahead checker of a choice, the alternatives of large LL(1) choices may be
+   * moved into methods of their own.
+   */
+  private String genLookaheadChecker(ParserData data, Lookahead[] conds, String[] actions,
+      Sequence[] alternatives) {
     // The state variables.
     LookaheadState state = LookaheadState.NOOPENSTM;
     int indentAmt = 0;
     boolean[] casedValues = new boolean[data.getTokenCount()];
+    // The cases of the open switch, with the kinds and the index of the action
+    List<boolean[]> cases = new ArrayList<>();
+    List<Integer> caseActions = new ArrayList<>();
     String retval = "";
     Lookahead la = null;
     Token t = null;
@@ -336,6 +415,7 @@ class JavaParserGenerator extends ParserGenerator {
               retval += "\u0002\n" + "} else if (";
               break;
             case OPENSWITCH:
+              retval += genSwitch(data, cases, caseActions, actions, alternatives);
               retval += "\u0002\n" + "default:" + "\u0001";
               if (data.getErrorReporting()) {
                 retval += "\njj_la1[" + data.getIndex(la) + "] = jj_gen;";
@@ -376,13 +456,7 @@ class JavaParserGenerator extends ParserGenerator {
               retval += "\u0002\n" + "} else {\u0001";
               //$FALL-THROUGH$ Control flows through to next case.
             case NOOPENSTM:
-              retval += "\n" + "switch (";
-              if (data.getCacheTokens()) {
-                retval += "jj_nt.kind";
-                retval += ") {\u0001";
-              } else {
-                retval += "(jj_ntk==-1)?jj_ntk_f():jj_ntk) {\u0001";
-              }
+              // The switch is generated by genSwitch once all its cases are known
               for (int i = 0; i < data.getTokenCount(); i++) {
                 casedValues[i] = false;
               }
@@ -390,22 +464,15 @@ class JavaParserGenerator extends ParserGenerator {
               // Don't need to do anything if state is OPENSWITCH.
             default:
           }
+          boolean[] kinds = new boolean[data.getTokenCount()];
           for (int i = 0; i < data.getTokenCount(); i++) {
             if (firstSet[i] && !casedValues[i]) {
               casedValues[i] = true;
-              retval += "\u0002\ncase ";
-              String s = data.getNameOfToken(i);
-              if (s == null) {
-                retval += i;
-              } else {
-                retval += s;
-              }
-              retval += ":\u0001";
+              kinds[i] = true;
             }
           }
-          retval += "{";
-          retval += actions[index];
-          retval += "\nbreak;\n}";
+          cases.add(kinds);
+          caseActions.add(index);
           state = LookaheadState.OPENSWITCH;
 
         }
@@ -430,6 +497,7 @@ class JavaParserGenerator extends ParserGenerator {
             retval += "\u0002\n" + "} else if (";
             break;
           case OPENSWITCH:
+            retval += genSwitch(data, cases, caseActions, actions, alternatives);
             retval += "\u0002\n" + "default:" + "\u0001";
             if (data.getErrorReporting()) {
               retval += "\njj_la1[" + data.getIndex(la) + "] = jj_gen;";
@@ -471,6 +539,7 @@ class JavaParserGenerator extends ParserGenerator {
         retval += "\u0002\n" + "} else {\u0001" + actions[index];
         break;
       case OPENSWITCH:
+        retval += genSwitch(data, cases, caseActions, actions, alternatives);
         retval += "\u0002\n" + "default:" + "\u0001";
         if (data.getErrorReporting()) {
           retval += "\njj_la1[" + data.getIndex(la) + "] = jj_gen;";
@@ -483,6 +552,139 @@ class JavaParserGenerator extends ParserGenerator {
     return retval;
   }
 
+  /**
+   * Generates the switch of the LL(1) cases, and clears them. Large switches look up the case in a
+   * table indexed by the token kind, and move the alternatives that only consume tokens and call
+   * productions into methods of their own to keep the production small.
+   */
+  private String genSwitch(ParserData data, List<boolean[]> cases, List<Integer> caseActions, String[] actions,
+      Sequence[] alternatives) {
+    String kind = data.getCacheTokens() ? "jj_nt.kind" : "(jj_ntk==-1)?jj_ntk_f():jj_ntk";
+    int labels = 0;
+    for (boolean[] kinds : cases) {
+      for (boolean k : kinds) {
+        labels += k ? 1 : 0;
+      }
+    }
+
+    String retval = "\n" + "switch (";
+    if (labels < JavaParserGenerator.SWITCH_TABLE_LABELS) {
+      retval += kind + ") {\u0001";
+      for (int c = 0; c < cases.size(); c++) {
+        boolean[] kinds = cases.get(c);
+        for (int i = 0; i < kinds.length; i++) {
+          if (kinds[i]) {
+            retval += "\u0002\ncase ";
+            String s = data.getNameOfToken(i);
+            if (s == null) {
+              retval += i;
+            } else {
+              retval += s;
+            }
+            retval += ":\u0001";
+          }
+        }
+        retval += "{";
+        retval += actions[caseActions.get(c)];
+        retval += "\nbreak;\n}";
+      }
+    } else {
+      String name = "jj_alt_" + (++this.switchCount);
+      StringBuilder table = new StringBuilder();
+      int[] values = new int[data.getTokenCount()];
+      for (int c = 0; c < cases.size(); c++) {
+        boolean[] kinds = cases.get(c);
+        for (int i = 0; i < kinds.length; i++) {
+          if (kinds[i]) {
+            values[i] = c + 1;
+          }
+        }
+      }
+      for (int value : values) {
+        table.append((value < 256) ? "\\" + Integer.toOctalString(value) : String.format("\\u%04x", value));
+      }
+      if (cases.size() < 128) {
+        this.switchMembers.add("  private static final byte[] " + name + " = \"" + table
+            + "\".getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);\n\n");
+      } else {
+        this.switchMembers.add("  private static final char[] " + name + " = \"" + table + "\".toCharArray();\n\n");
+      }
+
+      retval += name + "[" + kind + "]) {\u0001";
+      for (int c = 0; c < cases.size(); c++) {
+        int index = caseActions.get(c);
+        String action = actions[index];
+        Set<String> throwsList = new LinkedHashSet<>();
+        if ((alternatives != null) && !isTrivial(alternatives[index])
+            && isSplittable(data, alternatives[index], throwsList)) {
+          String method = name + "_" + (c + 1);
+          StringWriter text = new StringWriter();
+          try (PrintWriter writer = new PrintWriter(text)) {
+            writer.print("  private void " + method + "() throws ParseException");
+            for (String exception : throwsList) {
+              writer.print(", " + exception);
+            }
+            writer.print(" {");
+            printPhase1Code(action, 4, writer);
+            writer.println("  }");
+            writer.println();
+          }
+          this.switchMembers.add(text.toString());
+          action = "\n" + method + "();";
+        }
+        retval += "\u0002\ncase " + (c + 1) + ":\u0001{";
+        retval += action;
+        retval += "\nbreak;\n}";
+      }
+    }
+    cases.clear();
+    caseActions.clear();
+    return retval;
+  }
+
+  /**
+   * Returns true if the alternative consumes at most a single token or calls a single production.
+   */
+  private static boolean isTrivial(Sequence alternative) {
+    List<? super Object> units = alternative.getUnits();
+    return (units.size() < 2) || ((units.size() == 2)
+        && ((units.get(1) instanceof RegularExpression) || (units.get(1) instanceof NonTerminal)));
+  }
+
+  /**
+   * Returns true if the code of the expansion doesn't refer to variables of the production, and
+   * collects the exceptions of the productions it calls.
+   */
+  private static boolean isSplittable(ParserData data, Expansion e, Set<String> throwsList) {
+    if (e instanceof RegularExpression) {
+      RegularExpression e_nrw = (RegularExpression) e;
+      return e_nrw.getLhsTokens().isEmpty() && (e_nrw.getRhsToken() == null);
+    } else if (e instanceof NonTerminal) {
+      NonTerminal e_nrw = (NonTerminal) e;
+      if (!e_nrw.getLhsTokens().isEmpty() || !e_nrw.getArgumentTokens().isEmpty()) {
+        return false;
+      }
+      NormalProduction production = data.getProduction(e_nrw.getName());
+      for (List<Token> name : production.getThrowsList()) {
+        throwsList.add(name.stream().map(t -> t.image).collect(Collectors.joining()));
+      }
+      return true;
+    } else if (e instanceof Lookahead) {
+      return ((Lookahead) e).getActionTokens().isEmpty();
+    } else if (e instanceof Choice) {
+      return ((Choice) e).getChoices().stream().allMatch(c -> isSplittable(data, c, throwsList));
+    } else if (e instanceof Sequence) {
+      return ((Sequence) e).getUnits().stream().allMatch(u -> isSplittable(data, (Expansion) u, throwsList));
+    } else if (e instanceof OneOrMore) {
+      return isSplittable(data, ((OneOrMore) e).getExpansion(), throwsList);
+    } else if (e instanceof ZeroOrMore) {
+      return isSplittable(data, ((ZeroOrMore) e).getExpansion(), throwsList);
+    } else if (e instanceof ZeroOrOne) {
+      return isSplittable(data, ((ZeroOrOne) e).getExpansion(), throwsList);
+    }
+    return false;
+  }
+
   private final void genHeaderMethod(BNFProduction p, Token t, PrintWriter writer) {
     genTokenSetup(t);
     writer.print(getLeadingComments(t));
@@ -513,22 +715,34 @@ class JavaParserGenerator extends ParserGenerator {
     }
   }
 
-  private void generatePhase2(Expansion e, PrintWriter writer, ParserData data) {
+  private void generatePhase2(Lookahead la, PrintWriter writer, ParserData data) {
+    Expansion e = la.getLaExpansion();
+    int[] table = data.getLookaheadTable(la);
+    if (table != null) {
+      writer.println("  private static final int[] jj_2" + e.internal_name + "_table = { "
+          + Arrays.stream(table).mapToObj(Integer::toString).collect(Collectors.joining(", ")) + " };");
+    }
     writer.println("  private boolean jj_2" + e.internal_name + "(int xla) {");
     writer.println("    jj_la = xla;");
     writer.println("    jj_lastpos = jj_scanpos = token;");
 
     String ret_suffix = (data.getDepthLimit() > 0) ? " && !jj_depth_error" : "";
+    String lookahead = "(!jj_3" + e.internal_name + "() || jj_done)" + ret_suffix;
+    if (table != null) {
+      lookahead = "jj_decide(jj_2" + e.internal_name + "_table)";
+    } else {
+      writer.println("    jj_done = false;");
+    }
 
-    writer.println("    try {");
-    writer.println("      return (!jj_3" + e.internal_name + "()" + ret_suffix + ");");
-    writer.println("    } catch (LookaheadSuccess ls) {");
-    writer.println("      return true;");
     if (data.getErrorReporting()) {
+      writer.println("    try {");
+      writer.println("      return " + lookahead + ";");
       writer.println("    } finally {");
       writer.println("      jj_save(" + (Integer.parseInt(e.internal_name.substring(1)) - 1) + ", xla);");
+      writer.println("    }");
+    } else {
+      writer.println("    return " + lookahead + ";");
     }
-    writer.println("    }");
     writer.println("  }");
     writer.println();
   }
@@ -538,7 +752,22 @@ class JavaParserGenerator extends ParserGenerator {
       return;
     }
 
-    writer.println("  private boolean jj_3" + e.internal_name + "() {");
+    String name = "jj_3" + e.internal_name;
+    if ((data.getLookaheadMemo() > 0) && (e.parent instanceof NormalProduction)) {
+      // The expansion of a production is scanned once per token position
+      int id = ++this.memoCount;
+      writer.println("  private boolean " + name + "() {");
+      writer.println("    Token xsp = jj_scanpos;");
+      writer.println("    int xsm = jj_memo_get(" + id + ");");
+      writer.println("    if (xsm >= 0)");
+      writer.println("      return xsm != 0;");
+      writer.println("    return jj_memo_put(xsp, " + id + ", " + name + "_scan());");
+      writer.println("  }");
+      writer.println();
+      name += "_scan";
+    }
+
+    writer.println("  private boolean " + name + "() {");
 
     if (data.getDepthLimit() > 0) {
       writer.println("if(++jj_depth > " + data.getDepthLimit() + ") {");
@@ -632,6 +861,7 @@ class JavaParserGenerator extends ParserGenerator {
         }
         if (i != (e_nrw.getChoices().size() - 1)) {
           writer.println(genjj_3Call(nested_seq) + ") {");
+          writer.println("      if (jj_done) return true;");
           writer.println("      jj_scanpos = xsp;");
         } else {
           writer.println(genjj_3Call(nested_seq) + ")");
@@ -664,7 +894,7 @@ class JavaParserGenerator extends ParserGenerator {
       writer.println("    if (" + genjj_3Call(nested_e) + ") " + genReturn(jj3_expansion, true, data));
       writer.println("    while (true) {");
       writer.println("      xsp = jj_scanpos;");
-      writer.println("      if (" + genjj_3Call(nested_e) + ") { jj_scanpos = xsp; break; }");
+      writer.println("      if (" + genjj_3Call(nested_e) + ") { if (jj_done) return true; jj_scanpos = xsp; break; }");
       writer.println("    }");
     } else if (e instanceof ZeroOrMore) {
       if (!xsp_declared) {
@@ -675,7 +905,7 @@ class JavaParserGenerator extends ParserGenerator {
       Expansion nested_e = e_nrw.getExpansion();
       writer.println("    while (true) {");
       writer.println("      xsp = jj_scanpos;");
-      writer.println("      if (" + genjj_3Call(nested_e) + ") { jj_scanpos = xsp; break; }");
+      writer.println("      if (" + genjj_3Call(nested_e) + ") { if (jj_done) return true; jj_scanpos = xsp; break; }");
       writer.println("    }");
     } else if (e instanceof ZeroOrOne) {
       if (!xsp_declared) {
@@ -685,7 +915,7 @@ class JavaParserGenerator extends ParserGenerator {
       ZeroOrOne e_nrw = (ZeroOrOne) e;
       Expansion nested_e = e_nrw.getExpansion();
       writer.println("    xsp = jj_scanpos;");
-      writer.println("    if (" + genjj_3Call(nested_e) + ") jj_scanpos = xsp;");
+      writer.println("    if (" + genjj_3Call(nested_e) + ") { if (jj_done) return true; jj_scanpos = xsp; }");
     }
     return xsp_declared;
   }
@@ -16,18 +16,25 @@ enum JavaTemplate implements TemplateProvider {
 
   LEXER("Lexer", "%sTokenManager"),
   PARSER("Parser", "%s"),
+  PARSER_POOL("ParserPool", "%sPool"),
 
   PROVIDER("Provider"),
   STREAM_PROVIDER("StreamProvider"),
   STRING_PROVIDER("StringProvider"),
+  MAPPED_FILE_PROVIDER("MappedFileProvider"),
+  PUSH_PROVIDER("PushProvider"),
   CHAR_STREAM("JavaCharStream"),
+  CHAR_SEQUENCE_STREAM("CharSequenceStream"),
 
   MULTI_NODE("MultiNode", "%s"),
   NODE("Node"),
+  ARENA_NODE("ArenaNode", "Node"),
+  TREE_ARENA("TreeArena", "%sTreeArena"),
 
   PARSER_EXCEPTION("ParseException"),
   PARSER_CONSTANTS("ParserConstants", "%sConstants"),
   TOKEN("Token"),
+  TOKEN_BATCH("TokenBatch"),
   TOKEN_EXCEPTION("TokenException"),
 
   TREE("Tree"),
@@ -35,7 +42,8 @@ enum JavaTemplate implements TemplateProvider {
   TREE_CONSTANTS("TreeConstants", "%sTreeConstants"),
 
   VISITOR("Visitor", "%sVisitor"),
-  DEFAULT_VISITOR("DefaultVisitor", "%sDefaultVisitor");
+  DEFAULT_VISITOR("DefaultVisitor", "%sDefaultVisitor"),
+  WALKER("Walker", "%sWalker");
 
   private final String name;
   private final String path;
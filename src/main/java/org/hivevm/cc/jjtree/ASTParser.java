@@ -31,6 +31,9 @@ abstract class ASTParser {
     this.jjtreeOptions.add(HiveCC.JJTREE_NODE_DEFAULT_VOID);
     this.jjtreeOptions.add(HiveCC.JJTREE_OUTPUT_FILE);
     this.jjtreeOptions.add(HiveCC.JJTREE_NODE_SCOPE_HOOK);
+    this.jjtreeOptions.add(HiveCC.JJTREE_NODE_ARENA);
+    this.jjtreeOptions.add(HiveCC.JJTREE_NODE_USES_PARSER);
+    this.jjtreeOptions.add(HiveCC.JJTREE_NODE_CONTEXT);
     this.jjtreeOptions.add(HiveCC.JJTREE_TRACK_TOKENS);
     this.jjtreeOptions.add(HiveCC.JJTREE_NODE_FACTORY);
     this.jjtreeOptions.add(HiveCC.JJTREE_BUILD_NODE_FILES);
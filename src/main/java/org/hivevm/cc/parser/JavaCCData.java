@@ -20,6 +20,7 @@ public class JavaCCData implements SemanticRequest, ParserRequest {
 
   private final Options                    options;
   private final boolean                    isGenerated;
+  private boolean                          tokenChainWalked;
   private Action                           actForEof;
   private String                           nextStateForEof;
 
@@ -204,6 +205,16 @@ public class JavaCCData implements SemanticRequest, ParserRequest {
     return this.tokenCount++;
   }
 
+  @Override
+  public final boolean isTokenChainWalked() {
+    return this.tokenChainWalked;
+  }
+
+  @Override
+  public final void setTokenChainWalked(boolean walked) {
+    this.tokenChainWalked = walked;
+  }
+
   @Override
   public final Action getActionForEof() {
     return this.actForEof;
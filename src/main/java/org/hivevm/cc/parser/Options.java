@@ -111,6 +111,30 @@ public interface Options extends Environment {
     return booleanValue(HiveCC.JJPARSER_KEEP_LINE_COLUMN);
   }
 
+  /**
+   * Find the lazy token image value. The token manager creates tokens without an image. The image
+   * field is set for the tokens that reach the actions: a token assigned to a variable, handed out
+   * by getToken or getNextToken, read as token by an action or as matchedToken by a lexical action.
+   * If an action walks the token chain, the parser sets the image of every consumed token.
+   */
+  default boolean getLazyTokenImage() {
+    return booleanValue(HiveCC.JJPARSER_LAZY_TOKEN_IMAGE);
+  }
+
+  /**
+   * Find the line column index value.
+   */
+  default boolean getLineColumnIndex() {
+    return booleanValue(HiveCC.JJPARSER_LINE_COLUMN_INDEX);
+  }
+
+  /**
+   * Find the DFA tables value.
+   */
+  default boolean getDfaTables() {
+    return booleanValue(HiveCC.JJPARSER_DFA_TABLES);
+  }
+
   /**
    * Get defined parser recursion depth limit.
    */
@@ -118,6 +142,42 @@ public interface Options extends Environment {
     return intValue(HiveCC.JJPARSER_DEPTH_LIMIT);
   }
 
+  /**
+   * Get the number of consumed tokens that stay valid before they are recycled, 0 if tokens are
+   * not recycled. A token kept by an action is overwritten by a later one, so grammars that assign
+   * tokens to variables (<code>t=&lt;ID&gt;</code>) or track the tokens of the nodes (TRACK_TOKENS)
+   * are refused, and other actions that take tokens from the parser are warned about. The code of
+   * the base parser or of subclasses is not checked.
+   */
+  default int getTokenPool() {
+    return intValue(HiveCC.JJPARSER_TOKEN_POOL);
+  }
+
+  /**
+   * Get the number of entries of the table that memoizes the syntactic lookahead, 0 if the lookahead
+   * is not memoized.
+   */
+  default int getLookaheadMemo() {
+    return intValue(HiveCC.JJPARSER_LOOKAHEAD_MEMO);
+  }
+
+  /**
+   * Should lookaheads with a fixed amount be decided by a table of the token kinds?
+   */
+  default boolean getLookaheadTables() {
+    return booleanValue(HiveCC.JJPARSER_LOOKAHEAD_TABLES);
+  }
+
+  /**
+   * Should the parser cut consumed tokens from the token chain, so that streams of any length are
+   * parsed in constant memory? A token kept by an action then ends after a few tokens, so grammars
+   * whose actions walk the chain with <code>next</code> are refused. The code of the base parser or
+   * of subclasses is not checked.
+   */
+  default boolean getStreaming() {
+    return booleanValue(HiveCC.JJPARSER_STREAMING);
+  }
+
   /**
    * Get defined Java package name.
    */
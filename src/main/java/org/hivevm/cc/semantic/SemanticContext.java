@@ -3,6 +3,8 @@
 
 package org.hivevm.cc.semantic;
 
+import org.hivevm.cc.HiveCC;
+import org.hivevm.cc.Language;
 import org.hivevm.cc.parser.JavaCCErrors;
 import org.hivevm.cc.parser.Options;
 
@@ -41,6 +43,33 @@ class SemanticContext {
     return this.options.getOtherAmbiguityCheck();
   }
 
+  /**
+   * Returns the number of consumed tokens that stay valid before they are recycled, only the Java
+   * parser recycles tokens.
+   */
+  public final int getTokenPool() {
+    return isJava() ? this.options.getTokenPool() : 0;
+  }
+
+  /**
+   * Returns true if the parser cuts consumed tokens from the token chain, only the Java parser does
+   * and a token pool unlinks them anyway.
+   */
+  public final boolean isStreaming() {
+    return this.options.getStreaming() && (this.options.getTokenPool() == 0) && isJava();
+  }
+
+  /**
+   * Returns true if the token manager leaves the images unset, only the Java parser does.
+   */
+  public final boolean isLazyTokenImage() {
+    return this.options.getLazyTokenImage() && isJava();
+  }
+
+  private boolean isJava() {
+    return Language.JAVA.name().equalsIgnoreCase(this.options.stringValue(HiveCC.JJPARSER_CODEGENERATOR));
+  }
+
   final void onSemanticError(Object node, String message) {
     JavaCCErrors.semantic_error(node, message);
   }
@@ -47,4 +47,6 @@ public interface SemanticRequest {
   Hashtable<String, Hashtable<String, RegularExpression>> getSimpleTokenTable(String stateName);
 
   void setNamesOfToken(RegularExpression expression);
+
+  void setTokenChainWalked(boolean walked);
 }
@@ -9,8 +9,10 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import org.hivevm.cc.parser.Action;
+import org.hivevm.cc.parser.BNFProduction;
 import org.hivevm.cc.parser.Choice;
 import org.hivevm.cc.parser.Expansion;
 import org.hivevm.cc.parser.Lookahead;
@@ -31,12 +33,17 @@ import org.hivevm.cc.parser.RZeroOrOne;
 import org.hivevm.cc.parser.RegExprSpec;
 import org.hivevm.cc.parser.RegularExpression;
 import org.hivevm.cc.parser.Sequence;
+import org.hivevm.cc.parser.Token;
 import org.hivevm.cc.parser.TokenProduction;
 import org.hivevm.cc.parser.ZeroOrMore;
 import org.hivevm.cc.parser.ZeroOrOne;
 
 public class Semanticize {
 
+  private static final Pattern  NEXT_TOKEN  = Pattern.compile("\\.\\s*next\\b");
+  private static final Pattern  TRACK_TOKEN = Pattern.compile("\\bjjtSet(First|Last)Token\\b");
+  private static final Pattern  TAKE_TOKEN  = Pattern.compile("\\b(getToken|getNextToken|token)\\b");
+
   private final SemanticRequest request;
   private final SemanticContext context;
 
@@ -164,6 +171,22 @@ public class Semanticize {
       TreeWalker.walk((bnfproduction).getExpansion(), semanticize.new ProductionDefinedChecker(), false);
     }
 
+    /*
+     * The following walks the actions of the parser. A streaming parser cuts consumed tokens from the
+     * token chain, so the actions must not walk it. A token pool recycles them, so the actions must
+     * not keep them. Without images from the token manager, the parser must set the images of all
+     * tokens the actions can reach through the token chain.
+     */
+    if (context.isStreaming() || (context.getTokenPool() > 0) || context.isLazyTokenImage()) {
+      TokenChecker checker = semanticize.new TokenChecker();
+      for (NormalProduction bnfproduction : request.getNormalProductions()) {
+        if (bnfproduction instanceof BNFProduction) {
+          checker.check(bnfproduction, ((BNFProduction) bnfproduction).getDeclarationTokens());
+        }
+        TreeWalker.walk(bnfproduction.getExpansion(), checker, false);
+      }
+    }
+
 
     /*
      * The following loop ensures that all target lexical states are defined. Also piggybacking on
@@ -781,6 +804,65 @@ public class Semanticize {
 
   }
 
+  /**
+   * Reports the actions that hold on to tokens of the parser, which the options that cut consumed
+   * tokens from the token chain or recycle them don't allow.
+   */
+  private class TokenChecker implements TreeWalker {
+
+    private boolean taken;
+    private boolean walked;
+
+    @Override
+    public boolean goDeeper(Expansion e) {
+      if (e instanceof RegularExpression) {
+        return false;
+      } else {
+        return true;
+      }
+    }
+
+    @Override
+    public void action(Expansion e) {
+      if (e instanceof Action) {
+        check(e, ((Action) e).getActionTokens());
+      } else if (e instanceof Lookahead) {
+        check(e, ((Lookahead) e).getActionTokens());
+      } else if (e instanceof NonTerminal) {
+        check(e, ((NonTerminal) e).getArgumentTokens());
+      } else if ((e instanceof RegularExpression) && !((RegularExpression) e).getLhsTokens().isEmpty()
+          && (getContext().getTokenPool() > 0)) {
+        getContext().onSemanticError(e, "The token is assigned to a variable, which option TOKEN_POOL recycles.");
+      }
+    }
+
+    private void check(Object node, List<Token> tokens) {
+      // A code block is a single token
+      StringBuilder code = new StringBuilder();
+      for (Token token : tokens) {
+        code.append(token.image).append(' ');
+      }
+      if (getContext().isStreaming() && Semanticize.NEXT_TOKEN.matcher(code).find()) {
+        getContext().onSemanticError(node, "The action walks the token chain, which option STREAMING cuts.");
+      }
+      if (getContext().isLazyTokenImage() && !this.walked && Semanticize.NEXT_TOKEN.matcher(code).find()) {
+        this.walked = true;
+        Semanticize.this.request.setTokenChainWalked(true);
+        getContext().onWarning(node, "The action walks the token chain, so option LAZY_TOKEN_IMAGE sets the image "
+            + "of every consumed token.");
+      }
+      if (getContext().getTokenPool() > 0) {
+        if (Semanticize.TRACK_TOKEN.matcher(code).find()) {
+          getContext().onSemanticError(node, "The node keeps its tokens, which option TOKEN_POOL recycles.");
+        } else if (!this.taken && Semanticize.TAKE_TOKEN.matcher(code).find()) {
+          this.taken = true;
+          getContext().onWarning(node, "The action takes a token from the parser, which option TOKEN_POOL "
+              + "recycles after " + getContext().getTokenPool() + " more tokens.");
+        }
+      }
+    }
+  }
+
   private class EmptyChecker implements TreeWalker {
 
     @Override
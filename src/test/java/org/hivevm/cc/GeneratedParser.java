@@ -0,0 +1,252 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: BSD-3-Clause
+
+package org.hivevm.cc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * The parser of the JavaCC grammar generated with options. The tool runs in its own class loader
+ * with the generated parser in front of its own one, so an option is tested by the tool generating
+ * its own grammars.
+ */
+class GeneratedParser {
+
+  static final File RESOURCES = new File("src/main/resources");
+
+  private final File  root;
+  private final File  classes;
+  private ClassLoader loader;
+
+  /**
+   * Generates and compiles the parser of JavaCC.jj with the options.
+   */
+  GeneratedParser(String... options) throws Exception {
+    this(new File(GeneratedParser.RESOURCES, "JavaCC.jj"), options);
+  }
+
+  /**
+   * Generates and compiles the parser of the grammar with the options.
+   */
+  GeneratedParser(File grammar, String... options) throws Exception {
+    this(grammar, Collections.emptyMap(), options);
+  }
+
+  /**
+   * Generates the parser of the grammar with the options and compiles it together with the classes
+   * given by name and source.
+   */
+  GeneratedParser(File grammar, Map<String, String> classes, String... options) throws Exception {
+    this.root = Files.createTempDirectory("hivecc").toFile();
+    this.classes = new File(this.root, "classes");
+
+    File sources = new File(this.root, "sources");
+    GeneratedParser.run(null, grammar, sources, options);
+    for (Map.Entry<String, String> entry : classes.entrySet()) {
+      Path file = sources.toPath().resolve(entry.getKey().replace('.', '/') + ".java");
+      Files.write(file, entry.getValue().getBytes(StandardCharsets.UTF_8));
+    }
+    GeneratedParser.compile(sources, this.classes);
+  }
+
+  /**
+   * Returns the generated source of the class.
+   */
+  final String source(String name) throws IOException {
+    File file = new File(this.root, "sources/" + name.replace('.', '/') + ".java");
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Loads a class of the generated parser, all classes are loaded by the same class loader.
+   */
+  final Class<?> load(String name) throws Exception {
+    if (this.loader == null) {
+      this.loader = GeneratedParser.loader(this.classes);
+    }
+    return this.loader.loadClass(name);
+  }
+
+  /**
+   * Creates a provider of the generated parser, package private constructors included.
+   */
+  final Object newProvider(String name, Class<?>[] types, Object... arguments) throws Exception {
+    Constructor<?> constructor = load("org.hivevm.cc.parser." + name).getDeclaredConstructor(types);
+    constructor.setAccessible(true);
+    return constructor.newInstance(arguments);
+  }
+
+  /**
+   * Reads the input of the provider with the token manager of the generated parser, returns the kind
+   * and image of each token, special tokens included.
+   */
+  final String tokenize(Object provider) throws Exception {
+    // The stream and the token manager are package private
+    Constructor<?> constructor =
+        load("org.hivevm.cc.parser.JavaCharStream").getDeclaredConstructor(load("org.hivevm.cc.parser.Provider"));
+    constructor.setAccessible(true);
+    Object stream = constructor.newInstance(provider);
+    constructor = load("org.hivevm.cc.parser.JavaCCParserTokenManager").getDeclaredConstructor(stream.getClass());
+    constructor.setAccessible(true);
+    Object manager = constructor.newInstance(stream);
+    Method next = manager.getClass().getDeclaredMethod("getNextToken");
+    next.setAccessible(true);
+    Class<?> token = load("org.hivevm.cc.parser.Token");
+    Field kind = token.getField("kind");
+    Field special = token.getField("specialToken");
+
+    StringBuilder builder = new StringBuilder();
+    Object t;
+    do {
+      t = next.invoke(manager);
+      for (Object s = special.get(t); s != null; s = special.get(s)) {
+        builder.append('[').append(kind.get(s)).append(' ').append(s).append("] ");
+      }
+      builder.append(kind.get(t)).append(' ').append(t).append('\n');
+    } while (((Integer) kind.get(t)) != 0);
+
+    // The end of the input is read again, like by a lookahead at the end
+    t = next.invoke(manager);
+    return builder.append(kind.get(t)).toString();
+  }
+
+  /**
+   * Parses the input of the provider as a grammar with the generated parser.
+   */
+  final void parse(Object provider) throws Exception {
+    Object options = load("org.hivevm.cc.HiveCCOptions").getConstructor().newInstance();
+    Object data = load("org.hivevm.cc.parser.JavaCCData")
+        .getConstructor(boolean.class, load("org.hivevm.cc.parser.Options"))
+        .newInstance(false, options);
+    Class<?> type = load("org.hivevm.cc.parser.JavaCCParserDefault");
+    Object parser = type.getConstructor(load("org.hivevm.cc.parser.Provider"), options.getClass())
+        .newInstance(provider, options);
+    try {
+      type.getMethod("initialize", data.getClass()).invoke(parser, data);
+      type.getMethod("javacc_input").invoke(parser);
+    } catch (InvocationTargetException e) {
+      throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+    }
+  }
+
+  /**
+   * Generates the grammar with the tool using the generated parser, returns the output directory.
+   */
+  final File generate(String grammar) throws Exception {
+    File output = new File(this.root, grammar);
+    GeneratedParser.run(this.classes, new File(GeneratedParser.RESOURCES, grammar), output);
+    return output;
+  }
+
+  /**
+   * Generates the grammar with the tool itself, returns the output directory.
+   */
+  static File generateDefault(String grammar) throws Exception {
+    File output = Files.createTempDirectory("hivecc").toFile();
+    GeneratedParser.run(null, new File(GeneratedParser.RESOURCES, grammar), output);
+    return output;
+  }
+
+  /**
+   * Generates a parser for the grammar, a tree grammar is generated in two steps.
+   */
+  static void run(File classes, File grammar, File output, String... options) throws Exception {
+    ClassLoader loader = GeneratedParser.loader(classes);
+    List<String> arguments = new ArrayList<>(Arrays.asList(options));
+    arguments.add(0, "-OUTPUT_DIRECTORY=" + output.getAbsolutePath());
+    arguments.add(grammar.getAbsolutePath());
+    if (grammar.getName().endsWith(".jjt")) {
+      GeneratedParser.main(loader, "org.hivevm.cc.HiveCCTree", arguments);
+      String name = grammar.getName();
+      arguments.set(arguments.size() - 1, new File(output, name.substring(0, name.length() - 1)).getAbsolutePath());
+    }
+    GeneratedParser.main(loader, "org.hivevm.cc.HiveCCParser", arguments);
+  }
+
+  private static void main(ClassLoader loader, String name, List<String> arguments) throws Exception {
+    // The generators are looked up through the context class loader
+    Thread thread = Thread.currentThread();
+    ClassLoader context = thread.getContextClassLoader();
+    thread.setContextClassLoader(loader);
+    try {
+      loader.loadClass(name).getMethod("main", String[].class).invoke(null,
+          (Object) arguments.toArray(new String[arguments.size()]));
+    } catch (InvocationTargetException e) {
+      throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+    } finally {
+      thread.setContextClassLoader(context);
+    }
+  }
+
+  /**
+   * Creates a class loader for the tool, the classes are loaded before the ones of the tool.
+   */
+  static ClassLoader loader(File classes) throws IOException {
+    List<URL> urls = new ArrayList<>();
+    if (classes != null) {
+      urls.add(classes.toURI().toURL());
+    }
+    for (String path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      urls.add(new File(path).toURI().toURL());
+    }
+    return new URLClassLoader(urls.toArray(new URL[urls.size()]), ClassLoader.getPlatformClassLoader());
+  }
+
+  /**
+   * Compiles the Java files of the sources against the tool.
+   */
+  static void compile(File sources, File classes) throws IOException {
+    List<String> arguments = new ArrayList<>();
+    arguments.addAll(Arrays.asList("-nowarn", "-proc:none", "-encoding", "UTF-8", "-d", classes.getAbsolutePath(),
+        "-cp", System.getProperty("java.class.path")));
+    try (Stream<Path> files = Files.walk(sources.toPath())) {
+      arguments.addAll(files.map(Path::toString).filter(p -> p.endsWith(".java")).collect(Collectors.toList()));
+    }
+
+    ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    int result = compiler.run(null, null, errors, arguments.toArray(new String[arguments.size()]));
+    if (result != 0) {
+      throw new AssertionError("Generated parser does not compile:\n" + errors);
+    }
+  }
+
+  /**
+   * Asserts that both directories contain the same files.
+   */
+  static void assertSameFiles(File expected, File actual) throws IOException {
+    List<Path> files;
+    try (Stream<Path> stream = Files.walk(expected.toPath())) {
+      files = stream.filter(Files::isRegularFile).map(p -> expected.toPath().relativize(p)).sorted()
+          .collect(Collectors.toList());
+    }
+    for (Path file : files) {
+      Path other = actual.toPath().resolve(file);
+      if (!Files.exists(other) || !Arrays.equals(Files.readAllBytes(expected.toPath().resolve(file)),
+          Files.readAllBytes(other))) {
+        throw new AssertionError("Generated file differs: " + file);
+      }
+    }
+  }
+}
@@ -0,0 +1,304 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: BSD-3-Clause
+
+package org.hivevm.cc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Generates the parser of the tool with an option and lets it generate the grammars of the tool,
+ * the result must not differ from the one of the tool itself.
+ */
+class ParserOptionsTest {
+
+  // A grammar for long inputs, the actions keep tokens but don't walk the token chain
+  private static final String STREAM  = "PARSER_BEGIN(StreamParser)\n"
+      + "  JAVA_PACKAGE: \"org.hivevm.cc.stream\"\n"
+      + "PARSER_END\n"
+      + "\n"
+      + "SKIP : { \" \" | \"\\n\" }\n"
+      + "TOKEN : { < NAME: ([\"a\"-\"z\"])+ > | < NUMBER: ([\"0\"-\"9\"])+ > }\n"
+      + "\n"
+      + "long input() :\n"
+      + "@code\n"
+      + "  long sum = 0;\n"
+      + "  long n;\n"
+      + "@end\n"
+      + "{\n"
+      + "  ( n=statement()\n"
+      + "  @code\n"
+      + "    sum = (sum * 31) + n;\n"
+      + "  @end\n"
+      + "  )* < EOF >\n"
+      + "}\n"
+      + "@code\n"
+      + "  return sum;\n"
+      + "@end\n"
+      + "\n"
+      + "long statement() :\n"
+      + "@code\n"
+      + "  Token t;\n"
+      + "  long k, n;\n"
+      + "@end\n"
+      + "{\n"
+      + "  LOOKAHEAD(2) t=< NAME >\n"
+      + "  @code\n"
+      + "    k = t.image.length();\n"
+      + "  @end\n"
+      + "  \"=\" n=value() \";\"\n"
+      + "  @code\n"
+      + "    n *= k;\n"
+      + "  @end\n"
+      + "| LOOKAHEAD(value() \",\") n=pair() \";\"\n"
+      + "| n=value() \";\"\n"
+      + "}\n"
+      + "@code\n"
+      + "  return n;\n"
+      + "@end\n"
+      + "\n"
+      + "long pair() :\n"
+      + "@code\n"
+      + "  long a, b;\n"
+      + "@end\n"
+      + "{\n"
+      + "  a=value() \",\" b=value()\n"
+      + "}\n"
+      + "@code\n"
+      + "  return a - b;\n"
+      + "@end\n"
+      + "\n"
+      + "long value() :\n"
+      + "@code\n"
+      + "  Token t;\n"
+      + "  long n;\n"
+      + "@end\n"
+      + "{\n"
+      + "  t=< NUMBER >\n"
+      + "  @code\n"
+      + "    n = Long.parseLong(t.image);\n"
+      + "  @end\n"
+      + "| t=< NAME >\n"
+      + "  @code\n"
+      + "    n = t.image.hashCode();\n"
+      + "  @end\n"
+      + "}\n"
+      + "@code\n"
+      + "  return n;\n"
+      + "@end\n";
+
+  // The same grammar, the actions only use the last consumed token
+  private static final String POOL    =
+      ParserOptionsTest.STREAM.replace("t=<", "<").replace("t.image", "getToken(0).image");
+
+  // The same grammar, the actions read the current token and a lexical action the matched one
+  private static final String LAZY    = ParserOptionsTest.STREAM.replace("t=<", "<")
+      .replace("t.image", "token.image")
+      .replace("< NUMBER: ([\"0\"-\"9\"])+ >",
+          "< NUMBER: ([\"0\"-\"9\"])+ > @code matchedToken.image = matchedToken.image.trim(); @end");
+
+  // The same grammar, with comments and strings read in their own lexical states
+  private static final String STATES  = ParserOptionsTest.STREAM
+      .replace("SKIP : { \" \" | \"\\n\" }\n",
+          "SKIP : { \" \" | \"\\n\" }\n"
+              + "SPECIAL_TOKEN : { < LINE: \"#\" (~[\"\\n\"])* > }\n"
+              + "MORE : { \"/*\" : IN_COMMENT | \"\\\"\" : IN_STRING }\n"
+              + "<IN_COMMENT> SPECIAL_TOKEN : { < COMMENT: \"*/\" > : DEFAULT }\n"
+              + "<IN_COMMENT> MORE : { < ~[] > }\n"
+              + "<IN_STRING> TOKEN : { < STRING: \"\\\"\" > : DEFAULT }\n"
+              + "<IN_STRING> MORE : { < ~[\"\\\"\"] > }\n")
+      .replace("    n = Long.parseLong(t.image);\n",
+          "    n = Long.parseLong(t.image) + ((t.specialToken == null) ? 0 : t.specialToken.image.hashCode());\n")
+      .replace("| t=< NAME >\n  @code\n    n = t.image.hashCode();",
+          "| t=< STRING >\n  @code\n    n = t.image.hashCode();\n  @end\n| t=< NAME >\n  @code\n    n = t.image.hashCode();");
+
+  private static final String PARSER  = "org.hivevm.cc.stream.StreamParser";
+
+  private static void assertRoundTrip(String... options) throws Exception {
+    ParserOptionsTest.assertRoundTrip(new GeneratedParser(options));
+  }
+
+  private static void assertRoundTrip(GeneratedParser parser) throws Exception {
+    for (String grammar : new String[] { "JavaCC.jj", "JJTree.jjt" }) {
+      File expected = GeneratedParser.generateDefault(grammar);
+      GeneratedParser.assertSameFiles(expected, parser.generate(grammar));
+    }
+  }
+
+  private static File grammar(String text) throws Exception {
+    File file = Files.createTempFile("hivecc", ".jj").toFile();
+    Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  /**
+   * Parses the input with the generated parser, returns the result or the message of the error.
+   */
+  private static String parse(GeneratedParser parser, String input) throws Exception {
+    Object instance = parser.load(ParserOptionsTest.PARSER).getConstructor(String.class).newInstance(input);
+    try {
+      return String.valueOf(instance.getClass().getMethod("input").invoke(instance));
+    } catch (InvocationTargetException e) {
+      return e.getCause().getClass().getSimpleName() + ": " + e.getCause().getMessage();
+    }
+  }
+
+  /**
+   * Parses a long input with the parsers generated from the grammar with and without the options,
+   * the results and the error message at a bad end must not differ.
+   */
+  private static GeneratedParser assertSameParse(File grammar, String... options) throws Exception {
+    GeneratedParser expected = new GeneratedParser(grammar);
+    GeneratedParser parser = new GeneratedParser(grammar, options);
+
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      switch (i % 4) {
+        case 0:
+          input.append("abc = ").append(i).append(";\n");
+          break;
+        case 1:
+          input.append(i).append(", x").append(";\n");
+          break;
+        case 2:
+          input.append("y").append(";\n");
+          break;
+        default:
+          input.append("z = q;\n");
+      }
+    }
+    String result = ParserOptionsTest.parse(parser, input.toString());
+    assertEquals(ParserOptionsTest.parse(expected, input.toString()), result);
+    Long.parseLong(result);
+
+    // The error message rescans the lookaheads near the end of the input
+    input.append("1, 2 3;");
+    result = ParserOptionsTest.parse(parser, input.toString());
+    assertEquals(ParserOptionsTest.parse(expected, input.toString()), result);
+    assertTrue(result.startsWith("ParseException"), result);
+    return parser;
+  }
+
+  /**
+   * Asserts that the generation of the grammar with the options is refused.
+   */
+  private static void assertRefused(File grammar, String... options) throws Exception {
+    Exception e = assertThrows(Exception.class, () -> new GeneratedParser(grammar, options));
+    assertEquals("org.hivevm.cc.parser.ParseException", e.getClass().getName());
+  }
+
+  @Test
+  void testLazyTokenImage() throws Exception {
+    ParserOptionsTest.assertRoundTrip("-LAZY_TOKEN_IMAGE=true");
+    ParserOptionsTest.assertSameParse(ParserOptionsTest.grammar(ParserOptionsTest.STREAM), "-LAZY_TOKEN_IMAGE=true");
+    ParserOptionsTest.assertSameParse(ParserOptionsTest.grammar(ParserOptionsTest.POOL), "-LAZY_TOKEN_IMAGE=true");
+
+    // Only the tokens that reach the actions get their image
+    GeneratedParser parser =
+        ParserOptionsTest.assertSameParse(ParserOptionsTest.grammar(ParserOptionsTest.LAZY), "-LAZY_TOKEN_IMAGE=true");
+    assertFalse(parser.source(ParserOptionsTest.PARSER).contains("jj_image(jj_consume_token"));
+  }
+
+  @Test
+  void testDfaTables() throws Exception {
+    ParserOptionsTest.assertRoundTrip("-DFA_TABLES=true");
+    ParserOptionsTest.assertSameParse(ParserOptionsTest.grammar(ParserOptionsTest.STREAM), "-DFA_TABLES=true");
+
+    File grammar = ParserOptionsTest.grammar(ParserOptionsTest.STATES);
+    GeneratedParser expected = new GeneratedParser(grammar);
+    GeneratedParser parser = new GeneratedParser(grammar, "-DFA_TABLES=true");
+    assertTrue(parser.source(ParserOptionsTest.PARSER + "TokenManager").contains("jjUnpack("));
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      input.append("abc = /* a ").append(i).append(" */ ").append(i).append(";\n");
+      input.append("# line ").append(i).append("\n\"s ").append(i).append("\", x;\n");
+      input.append("y = \"\";\n");
+    }
+    String result = ParserOptionsTest.parse(parser, input.toString());
+    assertEquals(ParserOptionsTest.parse(expected, input.toString()), result);
+    Long.parseLong(result);
+
+    // An unterminated comment fails in its lexical state
+    input.append("1; /* open");
+    result = ParserOptionsTest.parse(parser, input.toString());
+    assertEquals(ParserOptionsTest.parse(expected, input.toString()), result);
+    assertTrue(result.startsWith("TokenException"), result);
+  }
+
+  @Test
+  void testLineColumnIndex() throws Exception {
+    ParserOptionsTest.assertRoundTrip("-LINE_COLUMN_INDEX=true");
+  }
+
+  @Test
+  void testLookaheadMemo() throws Exception {
+    ParserOptionsTest.assertRoundTrip("-LOOKAHEAD_MEMO=64");
+  }
+
+  @Test
+  void testLookaheadTables() throws Exception {
+    GeneratedParser parser = new GeneratedParser("-LOOKAHEAD_TABLES=true");
+    assertTrue(parser.source("org.hivevm.cc.parser.JavaCCParser").contains("jj_decide("));
+    ParserOptionsTest.assertRoundTrip(parser);
+  }
+
+  @Test
+  void testLexerTables() throws Exception {
+    // The tables are shared by all token managers, only the accessors reach them
+    Class<?> type = new GeneratedParser(ParserOptionsTest.grammar(ParserOptionsTest.STREAM))
+        .load(ParserOptionsTest.PARSER + "TokenManager");
+    for (Field field : type.getDeclaredFields()) {
+      if (Modifier.isStatic(field.getModifiers()) && field.getType().isArray()) {
+        assertTrue(Modifier.isPrivate(field.getModifiers()), field.getName());
+      }
+    }
+    // The token manager is package private
+    Method image = type.getMethod("getLiteralImage", int.class);
+    Method state = type.getMethod("getLexStateName", int.class);
+    image.setAccessible(true);
+    state.setAccessible(true);
+    assertEquals("=", image.invoke(null, 5));
+    assertNull(image.invoke(null, 3));
+    assertEquals("DEFAULT", state.invoke(null, 0));
+  }
+
+  @Test
+  void testStreaming() throws Exception {
+    GeneratedParser parser =
+        ParserOptionsTest.assertSameParse(ParserOptionsTest.grammar(ParserOptionsTest.STREAM), "-STREAMING=true");
+    assertTrue(parser.source(ParserOptionsTest.PARSER).contains("jj_release"));
+  }
+
+  @Test
+  void testStreamingRefused() throws Exception {
+    // The actions of the tool walk the token chain
+    ParserOptionsTest.assertRefused(new File(GeneratedParser.RESOURCES, "JavaCC.jj"), "-STREAMING=true");
+  }
+
+  @Test
+  void testTokenPool() throws Exception {
+    GeneratedParser parser =
+        ParserOptionsTest.assertSameParse(ParserOptionsTest.grammar(ParserOptionsTest.POOL), "-TOKEN_POOL=4");
+    assertTrue(parser.source(ParserOptionsTest.PARSER).contains("jj_release"));
+  }
+
+  @Test
+  void testTokenPoolRefused() throws Exception {
+    // The actions keep the tokens they assign
+    ParserOptionsTest.assertRefused(ParserOptionsTest.grammar(ParserOptionsTest.STREAM), "-TOKEN_POOL=4");
+    ParserOptionsTest.assertRefused(new File(GeneratedParser.RESOURCES, "JavaCC.jj"), "-TOKEN_POOL=64");
+  }
+}
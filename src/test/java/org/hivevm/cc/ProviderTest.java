@@ -0,0 +1,227 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: BSD-3-Clause
+
+package org.hivevm.cc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reads input through the providers of a generated parser, the tokens must not differ from the ones
+ * read from a string.
+ */
+class ProviderTest {
+
+  private static final String     TEXT   = "// äöü € 𝄞\n";
+
+  // The action walks the special tokens, the comments come in pairs
+  private static final String     BATCH  = "PARSER_BEGIN(BatchParser)\n"
+      + "  JAVA_PACKAGE: \"org.hivevm.cc.batch\"\n"
+      + "PARSER_END\n"
+      + "\n"
+      + "SKIP : { \" \" | \"\\t\" | \"\\n\" }\n"
+      + "SPECIAL_TOKEN : { < COMMENT: \"#\" (~[\"\\n\"])* > }\n"
+      + "TOKEN : {\n"
+      + "  < NAME: ([\"a\"-\"z\", \"A\"-\"Z\"])+ >\n"
+      + "  @code\n"
+      + "    int n = 0;\n"
+      + "    for (Token s = matchedToken.specialToken; s != null; s = s.specialToken)\n"
+      + "      if (++n > 100) throw new IllegalStateException(\"cycle\");\n"
+      + "  @end\n"
+      + "| < STRING: \"\\\"\" (~[\"\\\"\"])* \"\\\"\" >\n"
+      + "}\n"
+      + "\n"
+      + "void input() : { ( LOOKAHEAD(2) < NAME > | < STRING > )* < EOF > }\n";
+
+  // Escapes in names, strings and comments, an even number of backslashes is no escape
+  private static final String     ESCAPES =
+      "# one \\u0041\n# two\nabc \"x\\u0041y\" d\\u0062c \"\\\\u0041\" e\\uuu0046 # end\n# last\n";
+
+  // Tabs between and after tokens on long lines
+  private static final String     TABS   = "ab\tcd \t\tef\n\t\"x\ty\"\tgh  \tij\t\n";
+
+  private static final Class<?>[] STRING = { String.class };
+  private static final Class<?>[] PATH   = { Path.class };
+  private static final Class<?>[] WINDOW = { Path.class, int.class };
+
+  private static Class<?> load(GeneratedParser parser, String name) throws Exception {
+    return parser.load("org.hivevm.cc.parser." + name);
+  }
+
+  @Test
+  void testMappedFileEmpty() throws Exception {
+    GeneratedParser parser = new GeneratedParser();
+    Path file = Files.createTempFile("hivecc", ".jj");
+
+    Object provider = parser.newProvider("MappedFileProvider", ProviderTest.PATH, file);
+    assertEquals(parser.tokenize(parser.newProvider("StringProvider", ProviderTest.STRING, "")),
+        parser.tokenize(provider));
+
+    load(parser, "Provider").getMethod("close").invoke(provider);
+    assertEquals(-1, load(parser, "Provider").getMethod("read", char[].class, int.class, int.class)
+        .invoke(provider, new char[16], 0, 16));
+
+    Object empty = parser.newProvider("MappedFileProvider", ProviderTest.PATH, file);
+    Exception e = assertThrows(Exception.class, () -> parser.parse(empty));
+    assertEquals("org.hivevm.cc.parser.ParseException", e.getClass().getName());
+  }
+
+  /**
+   * Reads the tokens with {@link #BATCH} from the stream, the special tokens of a token before it in
+   * input order.
+   */
+  private static String tokens(GeneratedParser parser, Object stream) throws Exception {
+    Class<?> type = parser.load("org.hivevm.cc.batch.BatchParserTokenManager");
+    Constructor<?> constructor = type.getDeclaredConstructor(parser.load("org.hivevm.cc.batch.JavaCharStream"));
+    constructor.setAccessible(true);
+    Object manager = constructor.newInstance(stream);
+    Method next = type.getMethod("getNextToken");
+    next.setAccessible(true);
+    Class<?> token = parser.load("org.hivevm.cc.batch.Token");
+
+    StringBuilder builder = new StringBuilder();
+    Object t;
+    do {
+      t = next.invoke(manager);
+      String specials = "";
+      for (Object s = token.getField("specialToken").get(t); s != null; s = token.getField("specialToken").get(s)) {
+        specials = token.getField("kind").get(s) + " " + s + "\n" + specials;
+      }
+      builder.append(specials).append(token.getField("kind").get(t)).append(' ').append(t).append('\n');
+    } while (((Integer) token.getField("kind").get(t)) != 0);
+    return builder.toString();
+  }
+
+  /**
+   * Reads the tokens with {@link #BATCH} from the stream into a batch, the images are taken from the
+   * input by the offsets.
+   */
+  private static String batch(GeneratedParser parser, Object stream, String input) throws Exception {
+    Class<?> type = parser.load("org.hivevm.cc.batch.BatchParserTokenManager");
+    Constructor<?> constructor = type.getDeclaredConstructor(parser.load("org.hivevm.cc.batch.JavaCharStream"));
+    constructor.setAccessible(true);
+    Object manager = constructor.newInstance(stream);
+    Class<?> batchType = parser.load("org.hivevm.cc.batch.TokenBatch");
+    Object batch = batchType.getConstructor(int.class).newInstance(4);
+    Method tokenize = type.getMethod("tokenize", batchType);
+    tokenize.setAccessible(true);
+    tokenize.invoke(manager, batch);
+
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < (Integer) batchType.getMethod("size").invoke(batch); i++) {
+      Object t = batchType.getMethod("newToken", int.class, CharSequence.class).invoke(batch, i, input);
+      builder.append(t.getClass().getField("kind").get(t)).append(' ').append(t).append('\n');
+    }
+    return builder.toString();
+  }
+
+  @Test
+  void testTokenBatch() throws Exception {
+    Path grammar = Files.createTempFile("hivecc", ".jj");
+    Files.write(grammar, ProviderTest.BATCH.getBytes(StandardCharsets.UTF_8));
+    GeneratedParser parser = new GeneratedParser(grammar.toFile());
+
+    Constructor<?> provider =
+        parser.load("org.hivevm.cc.batch.StringProvider").getDeclaredConstructor(ProviderTest.STRING);
+    Constructor<?> stream = parser.load("org.hivevm.cc.batch.JavaCharStream")
+        .getDeclaredConstructor(parser.load("org.hivevm.cc.batch.Provider"));
+    Constructor<?> sequence =
+        parser.load("org.hivevm.cc.batch.CharSequenceStream").getDeclaredConstructor(CharSequence.class);
+    provider.setAccessible(true);
+    stream.setAccessible(true);
+    sequence.setAccessible(true);
+
+    // The buffer of the stream wraps around and the escapes are dropped behind the tokens
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      input.append(ProviderTest.ESCAPES);
+    }
+    for (String text : new String[] { ProviderTest.ESCAPES, input.toString() }) {
+      String expected = ProviderTest.tokens(parser, stream.newInstance(provider.newInstance(text)));
+      assertEquals(expected, ProviderTest.batch(parser, stream.newInstance(provider.newInstance(text)), text));
+      assertEquals(expected, ProviderTest.batch(parser, sequence.newInstance(text), text));
+    }
+  }
+
+  /**
+   * Reads the tokens with {@link #BATCH} from the stream with a tab size of 8, with the lines and
+   * columns where they begin and end.
+   */
+  private static String columns(GeneratedParser parser, Object stream) throws Exception {
+    Class<?> type = parser.load("org.hivevm.cc.batch.BatchParserTokenManager");
+    Class<?> streamType = parser.load("org.hivevm.cc.batch.JavaCharStream");
+    Constructor<?> constructor = type.getDeclaredConstructor(streamType);
+    constructor.setAccessible(true);
+    Method tabSize = streamType.getMethod("setTabSize", int.class);
+    tabSize.setAccessible(true);
+    tabSize.invoke(stream, 8);
+    Object manager = constructor.newInstance(stream);
+    Method next = type.getMethod("getNextToken");
+    next.setAccessible(true);
+    Class<?> token = parser.load("org.hivevm.cc.batch.Token");
+
+    StringBuilder builder = new StringBuilder();
+    Object t;
+    do {
+      t = next.invoke(manager);
+      builder.append(t).append(' ').append(token.getField("beginLine").get(t)).append(':')
+          .append(token.getField("beginColumn").get(t)).append(' ').append(token.getField("endLine").get(t))
+          .append(':').append(token.getField("endColumn").get(t)).append('\n');
+    } while (((Integer) token.getField("kind").get(t)) != 0);
+    return builder.toString();
+  }
+
+  @Test
+  void testTabColumns() throws Exception {
+    Path grammar = Files.createTempFile("hivecc", ".jj");
+    Files.write(grammar, ProviderTest.BATCH.getBytes(StandardCharsets.UTF_8));
+    GeneratedParser parser = new GeneratedParser(grammar.toFile());
+
+    Constructor<?> provider =
+        parser.load("org.hivevm.cc.batch.StringProvider").getDeclaredConstructor(ProviderTest.STRING);
+    Constructor<?> stream = parser.load("org.hivevm.cc.batch.JavaCharStream")
+        .getDeclaredConstructor(parser.load("org.hivevm.cc.batch.Provider"));
+    Constructor<?> sequence =
+        parser.load("org.hivevm.cc.batch.CharSequenceStream").getDeclaredConstructor(CharSequence.class);
+    provider.setAccessible(true);
+    stream.setAccessible(true);
+    sequence.setAccessible(true);
+
+    // A line of many tokens, the columns are taken up from the previous token
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      line.append(ProviderTest.TABS, 0, ProviderTest.TABS.indexOf('\n'));
+    }
+    for (String text : new String[] { ProviderTest.TABS, line.append('\n').append(ProviderTest.TABS).toString() }) {
+      String expected = ProviderTest.columns(parser, stream.newInstance(provider.newInstance(text)));
+      assertEquals(expected, ProviderTest.columns(parser, sequence.newInstance(text)));
+    }
+  }
+
+  @Test
+  void testMappedFileWindows() throws Exception {
+    GeneratedParser parser = new GeneratedParser();
+    String text = ProviderTest.TEXT
+        + new String(Files.readAllBytes(new File(GeneratedParser.RESOURCES, "JavaCC.jj").toPath()), StandardCharsets.UTF_8)
+        + ProviderTest.TEXT;
+    Path file = Files.createTempFile("hivecc", ".jj");
+    Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+
+    String expected = parser.tokenize(parser.newProvider("StringProvider", ProviderTest.STRING, text));
+    // The file is larger than the windows, sequences are split between them
+    for (int window : new int[] { 4, 5, 7, 4096 }) {
+      Object provider = parser.newProvider("MappedFileProvider", ProviderTest.WINDOW, file, window);
+      assertEquals(expected, parser.tokenize(provider), "window " + window);
+    }
+    parser.parse(parser.newProvider("MappedFileProvider", ProviderTest.WINDOW, file, 64));
+  }
+}
@@ -0,0 +1,294 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: BSD-3-Clause
+
+package org.hivevm.cc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Generates a tree grammar with an option and parses inputs with it, the trees must not differ from
+ * the ones built without the option.
+ */
+class TreeOptionsTest {
+
+  private static final String   TREE   = "PARSER_BEGIN(TreeParser)\n"
+      + "  JAVA_PACKAGE: \"org.hivevm.cc.tree\"\n"
+      + "PARSER_END\n"
+      + "\n"
+      + "SKIP : { \" \" | \"\\n\" }\n"
+      + "TOKEN : { < ID: ([\"a\"-\"z\"])+ > | < NUM: ([\"0\"-\"9\"])+ > }\n"
+      + "\n"
+      + "void Start() : { ( Stmt() \";\" )* < EOF > }\n"
+      + "void Stmt() #void : { Sum() ( \"=\" Sum() #Assign(2) )? | \"{\" ( Stmt() \";\" )* \"}\" #Block(true)"
+      + " | \"[\" List() \"]\" }\n"
+      + "void List() #List(>1) : { ( Sum() )* }\n"
+      + "void Sum() #void : { Prod() ( \"+\" Prod() #Add(2) | \"-\" Prod() #Sub(2) )* }\n"
+      + "void Prod() #void : { Atom() ( \"*\" Atom() #Mul(2) )* }\n"
+      + "void Atom() #void : { LOOKAHEAD(2) < ID > #Name | < NUM > #Num | \"(\" Sum() \")\" #Paren(1)"
+      + " | \"!\" Atom() Atom() #Two(3) }\n";
+
+  private static final String   PARSER = "org.hivevm.cc.tree.TreeParser";
+
+  // A node of three children takes the missing ones from the enclosing scopes
+  private static final String[] INPUTS = { "a;", "a+b*c;", "x=1+2;", "{a;b=c;{};};", "[a b c];", "[a];", "[];",
+      "z; ! a b;", "[a ! b c];", "{ [ x ! y z ] ; };", "(a+b)*c;", "{ z; ! a b; };" };
+
+  private static File grammar() throws Exception {
+    File file = Files.createTempFile("hivecc", ".jjt").toFile();
+    Files.write(file.toPath(), TreeOptionsTest.TREE.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  /**
+   * Parses the inputs with the generated parser, returns the trees.
+   */
+  private static String parse(GeneratedParser parser) throws Exception {
+    Class<?> type = parser.load(TreeOptionsTest.PARSER);
+    Method rootNode = type.getDeclaredMethod("rootNode");
+    rootNode.setAccessible(true);
+
+    StringBuilder builder = new StringBuilder();
+    for (String input : TreeOptionsTest.INPUTS) {
+      Object instance = type.getConstructor(String.class).newInstance(input);
+      try {
+        type.getMethod("Start").invoke(instance);
+      } catch (InvocationTargetException e) {
+        throw new AssertionError(input, e.getCause());
+      }
+      TreeOptionsTest.dump(parser.load("org.hivevm.cc.tree.Tree"), rootNode.invoke(instance), "", builder);
+    }
+    return builder.toString();
+  }
+
+  private static void dump(Class<?> tree, Object node, String indent, StringBuilder builder) throws Exception {
+    TreeOptionsTest.dump(tree, node, indent, builder, null);
+  }
+
+  /**
+   * Dumps the tree of the node, the children of the nodes named skip are left out.
+   */
+  private static void dump(Class<?> tree, Object node, String indent, StringBuilder builder, String skip)
+      throws Exception {
+    // The interface of the nodes is package private
+    Method count = tree.getMethod("jjtGetNumChildren");
+    Method child = tree.getMethod("jjtGetChild", int.class);
+    Method parent = tree.getMethod("jjtGetParent");
+    count.setAccessible(true);
+    child.setAccessible(true);
+    parent.setAccessible(true);
+
+    builder.append(indent).append(node).append('\n');
+    for (int i = 0; i < (Integer) count.invoke(node); i++) {
+      Object c = child.invoke(node, i);
+      assertEquals(node, parent.invoke(c));
+      if (!node.toString().equals(skip)) {
+        TreeOptionsTest.dump(tree, c, indent + " ", builder, skip);
+      }
+    }
+  }
+
+  private static String parse(Map<String, String> classes, String... options) throws Exception {
+    return TreeOptionsTest.parse(new GeneratedParser(TreeOptionsTest.grammar(), classes, options));
+  }
+
+  @Test
+  void testNodeClass() throws Exception {
+    // The node class must see every child it gets
+    String node = "package org.hivevm.cc.tree;\n"
+        + "public class OrdinalNode extends Node {\n"
+        + "  private int ordinal = -1;\n"
+        + "  public OrdinalNode(TreeParser p, int i) { super(p, i); }\n"
+        + "  @Override\n"
+        + "  public void jjtAddChild(Node n, int i) {\n"
+        + "    super.jjtAddChild(n, i);\n"
+        + "    ((OrdinalNode) n).ordinal = i;\n"
+        + "  }\n"
+        + "  @Override\n"
+        + "  public String toString() {\n"
+        + "    boolean added = (parent == null) || ((ordinal >= 0) && (parent.jjtGetChild(ordinal) == this));\n"
+        + "    return added ? super.toString() : \"not added \" + super.toString();\n"
+        + "  }\n"
+        + "}\n";
+    assertEquals(TreeOptionsTest.parse(Collections.emptyMap()),
+        TreeOptionsTest.parse(Collections.singletonMap("org.hivevm.cc.tree.OrdinalNode", node), "-NODE_CLASS=OrdinalNode"));
+  }
+
+  @Test
+  void testNodeArena() throws Exception {
+    assertEquals(TreeOptionsTest.parse(Collections.emptyMap()),
+        TreeOptionsTest.parse(Collections.emptyMap(), "-NODE_ARENA=true"));
+    assertEquals(TreeOptionsTest.parse(Collections.emptyMap(), "-NODE_MULTI=true"),
+        TreeOptionsTest.parse(Collections.emptyMap(), "-NODE_MULTI=true", "-NODE_ARENA=true"));
+  }
+
+  @Test
+  void testNodeArenaGetters() throws Exception {
+    GeneratedParser parser =
+        new GeneratedParser(TreeOptionsTest.grammar(), Collections.emptyMap(), "-NODE_ARENA=true", "-TRACK_TOKENS=true");
+    Class<?> type = parser.load("org.hivevm.cc.tree.Node");
+    Object node = type.getConstructor(parser.load(TreeOptionsTest.PARSER), int.class).newInstance(null, 0);
+
+    // The getters don't place the node in an arena
+    assertNull(type.getMethod("jjtGetFirstToken").invoke(node));
+    assertNull(type.getMethod("jjtGetLastToken").invoke(node));
+    assertNull(type.getMethod("jjtGetValue").invoke(node));
+    assertNull(type.getMethod("jjtGetArena").invoke(node));
+  }
+
+  /**
+   * Parses the inputs with the generated parser, returns the first and last token of each node in
+   * tree order.
+   */
+  private static String tokens(GeneratedParser parser) throws Exception {
+    Class<?> type = parser.load(TreeOptionsTest.PARSER);
+    Class<?> node = parser.load("org.hivevm.cc.tree.Node");
+    Class<?> tree = parser.load("org.hivevm.cc.tree.Tree");
+    Method rootNode = type.getDeclaredMethod("rootNode");
+    Method count = tree.getMethod("jjtGetNumChildren");
+    Method child = tree.getMethod("jjtGetChild", int.class);
+    rootNode.setAccessible(true);
+    count.setAccessible(true);
+    child.setAccessible(true);
+
+    StringBuilder builder = new StringBuilder();
+    for (String input : TreeOptionsTest.INPUTS) {
+      Object instance = type.getConstructor(String.class).newInstance(input);
+      type.getMethod("Start").invoke(instance);
+
+      java.util.Deque<Object> nodes = new java.util.ArrayDeque<>();
+      nodes.push(rootNode.invoke(instance));
+      while (!nodes.isEmpty()) {
+        Object n = nodes.pop();
+        builder.append(n).append(' ').append(node.getMethod("jjtGetFirstToken").invoke(n)).append(' ')
+            .append(node.getMethod("jjtGetLastToken").invoke(n)).append('\n');
+        for (int i = (Integer) count.invoke(n) - 1; i >= 0; i--) {
+          nodes.push(child.invoke(n, i));
+        }
+      }
+    }
+    return builder.toString();
+  }
+
+  @Test
+  void testNodeArenaTokens() throws Exception {
+    String expected =
+        TreeOptionsTest.tokens(new GeneratedParser(TreeOptionsTest.grammar(), Collections.emptyMap(), "-TRACK_TOKENS=true"));
+    assertEquals(expected, TreeOptionsTest.tokens(new GeneratedParser(TreeOptionsTest.grammar(), Collections.emptyMap(),
+        "-NODE_ARENA=true", "-TRACK_TOKENS=true")));
+  }
+
+  /**
+   * Returns the source of a walker that dumps the trees like {@link #dump}, the node types are the
+   * ones of the walker methods.
+   */
+  private static String walker(String block, String paren) {
+    return "package org.hivevm.cc.tree;\n"
+        + "public class TreeDump extends TreeParserWalker {\n"
+        + "  private final StringBuilder builder = new StringBuilder();\n"
+        + "  private final boolean skip;\n"
+        + "  private String indent = \"\";\n"
+        + "  public TreeDump(boolean skip) { this.skip = skip; }\n"
+        + "  public static String dump(Node node, boolean skip) {\n"
+        + "    TreeDump walker = new TreeDump(skip);\n"
+        + "    walker.walk(node);\n"
+        + "    return walker.indent.isEmpty() ? walker.builder.toString() : \"not left\";\n"
+        + "  }\n"
+        + "  public static int depth(int depth) {\n"
+        + "    Node root = new " + paren + "((TreeParser) null, TreeParserTreeConstants.JJTPAREN);\n"
+        + "    for (Node node = root; depth > 1; depth--) {\n"
+        + "      Node child = new " + paren + "((TreeParser) null, TreeParserTreeConstants.JJTPAREN);\n"
+        + "      node.jjtAddChild(child, 0);\n"
+        + "      child.jjtSetParent(node);\n"
+        + "      node = child;\n"
+        + "    }\n"
+        + "    Depth walker = new Depth();\n"
+        + "    walker.walk(root);\n"
+        + "    return walker.left;\n"
+        + "  }\n"
+        + "  private static class Depth extends TreeParserWalker {\n"
+        + "    private Node last;\n"
+        + "    private int  left;\n"
+        + "    @Override\n"
+        + "    public void leaveParen(" + paren + " node) {\n"
+        + "      if ((node.jjtGetNumChildren() == 0) ? (last == null) : (node.jjtGetChild(0) == last)) left++;\n"
+        + "      last = node;\n"
+        + "    }\n"
+        + "  }\n"
+        + "  @Override\n"
+        + "  public boolean defaultEnter(Node node) {\n"
+        + "    builder.append(indent).append(node).append('\\n');\n"
+        + "    indent += \" \";\n"
+        + "    return true;\n"
+        + "  }\n"
+        + "  @Override\n"
+        + "  public void defaultLeave(Node node) { indent = indent.substring(1); }\n"
+        + "  @Override\n"
+        + "  public boolean enterBlock(" + block + " node) { return defaultEnter(node) && !skip; }\n"
+        + "}\n";
+  }
+
+  /**
+   * Walks the trees of the inputs with the walker of the parser generated with the options, the walk
+   * must visit the nodes in the order of the recursive dump.
+   */
+  private static void assertWalk(String block, String paren, String... options) throws Exception {
+    GeneratedParser parser = new GeneratedParser(TreeOptionsTest.grammar(),
+        Collections.singletonMap("org.hivevm.cc.tree.TreeDump", TreeOptionsTest.walker(block, paren)), options);
+    Class<?> type = parser.load(TreeOptionsTest.PARSER);
+    Method rootNode = type.getDeclaredMethod("rootNode");
+    rootNode.setAccessible(true);
+    Class<?> walker = parser.load("org.hivevm.cc.tree.TreeDump");
+    Method dump = walker.getMethod("dump", parser.load("org.hivevm.cc.tree.Node"), boolean.class);
+
+    for (String input : TreeOptionsTest.INPUTS) {
+      Object instance = type.getConstructor(String.class).newInstance(input);
+      type.getMethod("Start").invoke(instance);
+      for (boolean skip : new boolean[] { false, true }) {
+        StringBuilder builder = new StringBuilder();
+        TreeOptionsTest.dump(parser.load("org.hivevm.cc.tree.Tree"), rootNode.invoke(instance), "", builder,
+            skip ? "Block" : null);
+        assertEquals(builder.toString(), dump.invoke(null, rootNode.invoke(instance), skip), input);
+      }
+    }
+
+    // A tree far deeper than the stack of the thread, each node is left after its child
+    assertEquals(1000000, walker.getMethod("depth", int.class).invoke(null, 1000000));
+  }
+
+  @Test
+  void testWalker() throws Exception {
+    TreeOptionsTest.assertWalk("Node", "Node", "-VISITOR=true");
+    TreeOptionsTest.assertWalk("ASTBlock", "ASTParen", "-VISITOR=true", "-NODE_MULTI=true");
+  }
+
+  @Test
+  void testNodeArenaRefused() throws Exception {
+    // The views of the arena would lose the fields of the node class
+    Exception e = assertThrows(Exception.class, () -> new GeneratedParser(TreeOptionsTest.grammar(),
+        Collections.emptyMap(), "-NODE_ARENA=true", "-NODE_CLASS=OrdinalNode"));
+    assertEquals("org.hivevm.cc.jjtree.ParseException", e.getClass().getName());
+  }
+
+  @Test
+  void testNodeWithoutParser() throws Exception {
+    // The nodes of an arena get it from the tree state
+    String expected = TreeOptionsTest.parse(Collections.emptyMap(), "-NODE_MULTI=true");
+    assertEquals(expected, TreeOptionsTest.parse(Collections.emptyMap(), "-NODE_MULTI=true", "-NODE_USES_PARSER=false"));
+    assertEquals(expected, TreeOptionsTest.parse(Collections.emptyMap(), "-NODE_MULTI=true", "-NODE_USES_PARSER=false",
+        "-NODE_ARENA=true"));
+    assertEquals(expected, TreeOptionsTest.parse(Collections.emptyMap(), "-NODE_MULTI=true", "-NODE_USES_PARSER=false",
+        "-NODE_CONTEXT=java.util.Locale", "-NODE_ARENA=true"));
+  }
+}